@@ -0,0 +1,71 @@
+package indexoptimization;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Results of optimizing the indexes of many collections at once (see
+ * {@link IndexOptimizer#optimizeCollections(Map)}), with the time it took.
+ */
+public final class BatchOptimizationResult {
+
+    private final Map<String, OptimizationResult> results;
+    private final Map<String, Duration> durations;
+    private final int numOptimizations;
+    private final Duration totalDuration;
+    private final Duration elapsed;
+
+    BatchOptimizationResult(Map<String, OptimizationResult> results,
+                            Map<String, Duration> durations,
+                            int numOptimizations,
+                            Duration totalDuration,
+                            Duration elapsed) {
+        this.results = results;
+        this.durations = durations;
+        this.numOptimizations = numOptimizations;
+        this.totalDuration = totalDuration;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Result of every collection, in the order of the input.
+     */
+    public Map<String, OptimizationResult> getResults() {
+        return results;
+    }
+
+    public OptimizationResult getResult(String collection) {
+        return results.get(collection);
+    }
+
+    /**
+     * Time it took to optimize the indexes of the collection. Collections with the same indexes share the
+     * optimization, and its duration.
+     */
+    public Duration getDuration(String collection) {
+        return durations.get(collection);
+    }
+
+    /**
+     * Number of optimizations run, i.e. the number of distinct index lists of the collections.
+     */
+    public int getNumOptimizations() {
+        return numOptimizations;
+    }
+
+    /**
+     * Sum of the durations of the optimizations. Divided by {@link #getElapsed()}, it tells how many optimizations
+     * ran in parallel on average.
+     */
+    public Duration getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Wall-clock time of the whole batch.
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+}
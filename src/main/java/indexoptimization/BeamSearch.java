@@ -0,0 +1,238 @@
+package indexoptimization;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Breadth-first search over the same states as the exhaustive search, which keeps only the {@code beamWidth} most
+ * promising states of every depth. A state at depth d has d pairs merged, so every depth is reached by merging one more
+ * pair into the states of the previous one; states reached on more than one path are only kept once.
+ *
+ * States are ranked by the lower bound of the cost of the lists reachable from them (the cost of their permanent
+ * indexes, see {@link IndexListSelectionStrategy#costLowerBound}) and then by their own cost, if the optimizer tracks
+ * it. If the strategy has no costs, the states are kept in the order in which they were reached. Every state is a
+ * valid index list, and the best one seen on any depth is the result.
+ *
+ * Like the exhaustive search, a state is an {@link IndexListState} with a {@link PairGraph}. The children of the beam
+ * are ranked by merging their pair into the graph of their parent and undoing it again, and their costs are updated
+ * from the cost of the parent, so only the children which are kept (the best list and the states of the next beam)
+ * get index lists and graphs of their own.
+ */
+final class BeamSearch {
+
+    private final int beamWidth;
+    private final IndexListSelectionStrategy strategy;
+
+    BeamSearch(int beamWidth, IndexListSelectionStrategy strategy) {
+        this.beamWidth = beamWidth;
+        this.strategy = strategy;
+    }
+
+    /**
+     * @param indexes   indexes of the component, with their cost if it is tracked
+     * @param pairGraph pairs of the component, owned by the search
+     * @param pairIds   ids of the pairs in {@code pairGraph}
+     */
+    List<EncodedIndex> search(IndexListState indexes, PairGraph pairGraph, int[] pairIds, SearchContext context) {
+        List<EncodedIndex> best = indexes;
+        long[] bestCost = indexes.cost;
+        List<State> beam = List.of(new State(indexes, pairGraph, pairIds));
+        while (!beam.isEmpty() && !context.shouldStop()) {
+            List<Child> children = new ArrayList<>();
+            for (State state : beam) {
+                state.expand(children, strategy, context.dictionary);
+            }
+            List<EncodedIndex> newBest;
+            long[] newBestCost;
+            Child cheapest = bestCost != null ? getCheapest(children) : null;
+            if (cheapest != null) {
+                //the strategy keeps the first of the cheapest lists, and the children come before the best list
+                boolean better = SearchContext.compare(cheapest.cost, bestCost) <= 0;
+                newBest = better ? cheapest.getIndexes() : best;
+                newBestCost = better ? cheapest.cost : bestCost;
+            } else {
+                List<List<EncodedIndex>> candidates = new ArrayList<>(children.size() + 1);
+                children.forEach(child -> candidates.add(child.getIndexes()));
+                candidates.add(best);
+                newBest = IndexOptimizer.choseBestIndexSet(strategy, candidates, context.dictionary);
+                newBestCost = newBest instanceof IndexListState ? ((IndexListState) newBest).cost : null;
+            }
+            if (newBest != best) {
+                best = newBest;
+                bestCost = newBestCost;
+                if (context.incumbentPublisher != null) {
+                    context.incumbentPublisher.offer(context.component, best, bestCost != null ? bestCost
+                            : strategy.cost(new DecodedIndexList(best, context.dictionary)));
+                }
+            }
+            beam = selectBest(children);
+        }
+        return best;
+    }
+
+    /**
+     * @return the first of the children with the lowest cost, or null if the cost of some child is not known
+     */
+    private static Child getCheapest(List<Child> children) {
+        Child cheapest = null;
+        for (Child child : children) {
+            if (child.cost == null) {
+                return null;
+            }
+            if (cheapest == null || SearchContext.compare(child.cost, cheapest.cost) < 0) {
+                cheapest = child;
+            }
+        }
+        return cheapest;
+    }
+
+    private List<State> selectBest(List<Child> children) {
+        List<Child> ranked = new ArrayList<>();
+        for (Child child : children) {
+            if (child.hasPairs) { // leaves can not be expanded any further
+                ranked.add(child);
+            }
+        }
+        //stable, so states without costs keep the order in which they were reached
+        ranked.sort(Comparator.comparing((Child child) -> child.lowerBound, BeamSearch::compareNullable)
+                            .thenComparing(child -> child.cost, BeamSearch::compareNullable));
+        //a state reached on several paths is ranked the same on all of them, so the first one is kept
+        List<State> beam = new ArrayList<>(Math.min(beamWidth, ranked.size()));
+        Set<IndexListKey> keys = new HashSet<>();
+        for (int i = 0; i < ranked.size() && beam.size() < beamWidth; i++) {
+            Child child = ranked.get(i);
+            if (keys.add(IndexListKey.of(child.getIndexes()))) {
+                beam.add(child.toState());
+            }
+        }
+        return beam;
+    }
+
+    private static int compareNullable(long[] cost1, long[] cost2) {
+        return cost1 != null && cost2 != null ? SearchContext.compare(cost1, cost2) : 0;
+    }
+
+    private static long[] add(long[] cost, long[] change) {
+        if (cost == null || change == null) {
+            return null;
+        }
+        long[] sum = new long[cost.length];
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = cost[i] + change[i];
+        }
+        return sum;
+    }
+
+    private static final class State {
+
+        final IndexListState indexes;
+        final PairGraph pairGraph;
+        final int[] pairIds;
+
+        State(IndexListState indexes, PairGraph pairGraph, int[] pairIds) {
+            this.indexes = indexes;
+            this.pairGraph = pairGraph;
+            this.pairIds = pairIds;
+        }
+
+        /**
+         * Ranks the children of this state, one per pair, without building their index lists.
+         */
+        void expand(List<Child> children, IndexListSelectionStrategy strategy, FieldDictionary dictionary) {
+            for (int id : pairIds) {
+                Pair<EncodedIndex, EncodedIndex> cc = pairGraph.get(id);
+                EncodedIndex constrainedContainingIndex = IndexOptimizer.mergeIndexPair(cc.getLeft(), cc.getRight());
+                long[] costChange = indexes.cost != null
+                        ? IndexOptimizer.getMergeCostChange(strategy, cc.getLeft(), cc.getRight(),
+                                                            constrainedContainingIndex, dictionary)
+                        : null;
+                int mark = pairGraph.merge(id, constrainedContainingIndex, null);
+                boolean hasPairs = hasPairs();
+                long[] lowerBound = hasPairs ? strategy.costLowerBound(new DecodedIndexList(
+                        getPermanentIndexes(cc, constrainedContainingIndex), dictionary)) : null;
+                pairGraph.undo(mark);
+                children.add(new Child(this, id, constrainedContainingIndex, costChange,
+                                       add(indexes.cost, costChange), lowerBound, hasPairs));
+            }
+        }
+
+        private boolean hasPairs() {
+            for (int id : pairIds) {
+                if (pairGraph.get(id) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Indexes of the child which are not the contained index of any of its pairs, read while the pair of the child
+         * is merged into the graph.
+         */
+        private List<EncodedIndex> getPermanentIndexes(Pair<EncodedIndex, EncodedIndex> cc,
+                                                       EncodedIndex constrainedContainingIndex) {
+            List<EncodedIndex> permanentIndexes = new ArrayList<>(indexes.size());
+            for (EncodedIndex index : indexes) {
+                if (index == cc.getLeft()) {
+                    continue;
+                }
+                EncodedIndex childIndex = index == cc.getRight() ? constrainedContainingIndex : index;
+                if (!pairGraph.isContainedIndex(childIndex)) {
+                    permanentIndexes.add(childIndex);
+                }
+            }
+            return permanentIndexes;
+        }
+    }
+
+    /**
+     * State reached from {@code parent} by merging pair {@code pairId}, ranked but not built yet.
+     */
+    private static final class Child {
+
+        final State parent;
+        final int pairId;
+        final EncodedIndex constrainedContainingIndex;
+        final long[] costChange;
+        final long[] cost;
+        final long[] lowerBound;
+        final boolean hasPairs;
+        private IndexListState indexes;
+
+        Child(State parent, int pairId, EncodedIndex constrainedContainingIndex, long[] costChange, long[] cost,
+              long[] lowerBound, boolean hasPairs) {
+            this.parent = parent;
+            this.pairId = pairId;
+            this.constrainedContainingIndex = constrainedContainingIndex;
+            this.costChange = costChange;
+            this.cost = cost;
+            this.lowerBound = lowerBound;
+            this.hasPairs = hasPairs;
+        }
+
+        IndexListState getIndexes() {
+            if (indexes == null) {
+                Pair<EncodedIndex, EncodedIndex> cc = parent.pairGraph.get(pairId);
+                indexes = parent.indexes.merge(cc.getLeft(), cc.getRight(), constrainedContainingIndex, costChange);
+            }
+            return indexes;
+        }
+
+        /**
+         * Builds the state with a graph of its own, as the parent's graph is dropped with the beam of the parent.
+         */
+        State toState() {
+            IndexListState childIndexes = getIndexes();
+            int mark = parent.pairGraph.merge(pairId, constrainedContainingIndex, null);
+            PairGraph pairGraph = parent.pairGraph.copy();
+            parent.pairGraph.undo(mark);
+            return new State(childIndexes, pairGraph, pairGraph.filter(parent.pairIds));
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+package indexoptimization;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Memo store limited by a number of entries and/or an estimated number of retained bytes. All operations are
+ * synchronized, the store is shared by all threads of an optimizer.
+ */
+final class BoundedMemoStore extends MemoStore {
+
+    private static final class Entry {
+        final IndexListKey key;
+        final List<EncodedIndex> indexes;
+        final long weight;
+        final int depth;
+        final MemoScope scope;
+
+        Entry(IndexListKey key, List<EncodedIndex> indexes, long weight, int depth, MemoScope scope) {
+            this.key = key;
+            this.indexes = indexes;
+            this.weight = weight;
+            this.depth = depth;
+            this.scope = scope;
+        }
+    }
+
+    private final long maxEntries;
+    private final long maxWeight;
+    private final Policy policy;
+    private final Map<IndexListKey, Entry> entries = new HashMap<>();
+    private long weight;
+
+    BoundedMemoStore(long maxEntries, long maxWeight, EvictionPolicy evictionPolicy) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        switch (evictionPolicy) {
+            case LRU:
+                this.policy = new LruPolicy();
+                break;
+            case TINY_LFU:
+                this.policy = new TinyLfuPolicy();
+                break;
+            case SHALLOW_FIRST:
+                this.policy = new ShallowFirstPolicy();
+                break;
+            default:
+                throw new IllegalArgumentException(evictionPolicy.toString());
+        }
+    }
+
+    @Override
+    synchronized List<EncodedIndex> lookup(IndexListKey key, MemoScope scope) {
+        policy.recordRequest(key);
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.scope.isCompatibleWith(scope)) {
+            return null;
+        }
+        policy.recordAccess(entry);
+        return entry.indexes;
+    }
+
+    @Override
+    synchronized void put(IndexListKey key, List<EncodedIndex> indexes, int depth, MemoScope scope) {
+        Entry entry = new Entry(key, indexes, estimateWeight(key, indexes), depth, scope);
+        if (exceedsBudget(1, entry.weight)) {
+            return; // would not fit even into an empty store
+        }
+        Entry replaced = entries.remove(key);
+        if (replaced != null) {
+            weight -= replaced.weight;
+            policy.remove(replaced);
+        }
+        entries.put(key, entry);
+        weight += entry.weight;
+        policy.add(entry);
+        policy.evictWhileOverBudget();
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+        policy.clear();
+    }
+
+    @Override
+    synchronized long entryCount() {
+        return entries.size();
+    }
+
+    @Override
+    synchronized long weight() {
+        return weight;
+    }
+
+    private boolean overBudget() {
+        return exceedsBudget(entries.size(), weight);
+    }
+
+    private boolean exceedsBudget(long entryCount, long entriesWeight) {
+        return (maxEntries >= 0 && entryCount > maxEntries) || (maxWeight >= 0 && entriesWeight > maxWeight);
+    }
+
+    private void evict(Entry entry) {
+        entries.remove(entry.key);
+        weight -= entry.weight;
+        recordEviction();
+    }
+
+    private abstract static class Policy {
+
+        void recordRequest(IndexListKey key) {
+        }
+
+        abstract void recordAccess(Entry entry);
+
+        abstract void add(Entry entry);
+
+        abstract void remove(Entry entry);
+
+        abstract void evictWhileOverBudget();
+
+        abstract void clear();
+
+        static Entry eldest(LinkedHashMap<IndexListKey, Entry> entries) {
+            return entries.values().iterator().next();
+        }
+
+        static LinkedHashMap<IndexListKey, Entry> accessOrderedMap() {
+            return new LinkedHashMap<>(16, 0.75f, true);
+        }
+    }
+
+    private final class LruPolicy extends Policy {
+
+        private final LinkedHashMap<IndexListKey, Entry> lru = accessOrderedMap();
+
+        @Override
+        void recordAccess(Entry entry) {
+            lru.get(entry.key);
+        }
+
+        @Override
+        void add(Entry entry) {
+            lru.put(entry.key, entry);
+        }
+
+        @Override
+        void remove(Entry entry) {
+            lru.remove(entry.key);
+        }
+
+        @Override
+        void evictWhileOverBudget() {
+            while (overBudget()) {
+                Entry victim = eldest(lru);
+                remove(victim);
+                evict(victim);
+            }
+        }
+
+        @Override
+        void clear() {
+            lru.clear();
+        }
+    }
+
+    private final class ShallowFirstPolicy extends Policy {
+
+        // LRU ordered entries per depth, deepest depth first
+        private final TreeMap<Integer, LinkedHashMap<IndexListKey, Entry>> byDepth =
+                new TreeMap<>((d1, d2) -> Integer.compare(d2, d1));
+
+        @Override
+        void recordAccess(Entry entry) {
+            byDepth.get(entry.depth).get(entry.key);
+        }
+
+        @Override
+        void add(Entry entry) {
+            byDepth.computeIfAbsent(entry.depth, d -> accessOrderedMap()).put(entry.key, entry);
+        }
+
+        @Override
+        void remove(Entry entry) {
+            LinkedHashMap<IndexListKey, Entry> sameDepth = byDepth.get(entry.depth);
+            sameDepth.remove(entry.key);
+            if (sameDepth.isEmpty()) {
+                byDepth.remove(entry.depth);
+            }
+        }
+
+        @Override
+        void evictWhileOverBudget() {
+            while (overBudget()) {
+                Entry victim = eldest(byDepth.firstEntry().getValue());
+                remove(victim);
+                evict(victim);
+            }
+        }
+
+        @Override
+        void clear() {
+            byDepth.clear();
+        }
+    }
+
+    private final class TinyLfuPolicy extends Policy {
+
+        private static final int WINDOW_PERCENT = 1;
+
+        private final FrequencySketch sketch =
+                new FrequencySketch(maxEntries >= 0 ? maxEntries : Math.max(1024, maxWeight / 1024));
+        private final LinkedHashMap<IndexListKey, Entry> window = accessOrderedMap();
+        private final LinkedHashMap<IndexListKey, Entry> main = accessOrderedMap();
+        private long windowWeight;
+
+        @Override
+        void recordRequest(IndexListKey key) {
+            sketch.increment(key);
+        }
+
+        @Override
+        void recordAccess(Entry entry) {
+            if (window.get(entry.key) == null) {
+                main.get(entry.key);
+            }
+        }
+
+        @Override
+        void add(Entry entry) {
+            window.put(entry.key, entry);
+            windowWeight += entry.weight;
+        }
+
+        @Override
+        void remove(Entry entry) {
+            if (window.remove(entry.key) != null) {
+                windowWeight -= entry.weight;
+            } else {
+                main.remove(entry.key);
+            }
+        }
+
+        @Override
+        void evictWhileOverBudget() {
+            //entries leaving the window compete with the eldest entries of the main area for admission
+            while (windowOverBudget() && overBudget()) {
+                Entry candidate = eldest(window);
+                remove(candidate);
+                while (overBudget() && !main.isEmpty()) {
+                    Entry victim = eldest(main);
+                    if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                        remove(victim);
+                        evict(victim);
+                    } else {
+                        break;
+                    }
+                }
+                if (overBudget()) {
+                    evict(candidate);
+                } else {
+                    main.put(candidate.key, candidate);
+                }
+            }
+            //move the remaining window overflow to the main area, evict from main if still over budget
+            while (windowOverBudget()) {
+                Entry entry = eldest(window);
+                remove(entry);
+                main.put(entry.key, entry);
+            }
+            while (overBudget()) {
+                Entry victim = !main.isEmpty() ? eldest(main) : eldest(window);
+                remove(victim);
+                evict(victim);
+            }
+        }
+
+        private boolean windowOverBudget() {
+            return window.size() > 1 && ((maxEntries >= 0 && window.size() > maxEntries * WINDOW_PERCENT / 100)
+                    || (maxWeight >= 0 && windowWeight > maxWeight * WINDOW_PERCENT / 100));
+        }
+
+        @Override
+        void clear() {
+            window.clear();
+            main.clear();
+            windowWeight = 0;
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package indexoptimization;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exact polynomial-time solver for groups of indexes which all have a single field set (equality-only indexes).
+ *
+ * For such indexes containment is the subset relation of the field sets, and an index can absorb another one only if
+ * all the indexes merged into it so far form a chain of subsets: merging {a} into {a,b} into {a,b,c} gives
+ * {{a}{b}{c}}, which still contains {a,b}, but not {a,c}. An optimized list is therefore a cover of the indexes with
+ * chains, with one index per chain - the top of the chain, constrained by the indexes below it. By Dilworth's theorem a
+ * minimum chain cover corresponds to a maximum matching in the bipartite graph with an edge from every contained index
+ * to every index containing it: an index whose left side is matched is merged into its partner, the others are the
+ * tops.
+ *
+ * The indexes merged away are exactly the matched left vertices, so if the strategy sums a cost per index (see
+ * {@link IndexListSelectionStrategy#indexCost(int)}), the best list is the one with the matched left vertices of
+ * highest total cost. The sets of left vertices which can be matched together form a matroid, so augmenting the
+ * matching from the left vertices in the order of decreasing cost finds it.
+ */
+final class ChainCover {
+
+    private ChainCover() {
+    }
+
+    /**
+     * @return true if the indexes can be optimized with {@link #optimize}
+     */
+    static boolean isApplicable(List<EncodedIndex> indexes, IndexListSelectionStrategy strategy) {
+        for (EncodedIndex index : indexes) {
+            if (index.getNumFieldSets() != 1 || strategy.indexCost(index.getLength()) == null) {
+                return false;
+            }
+        }
+        //equal indexes contain each other, which does not make a partial order
+        return new HashSet<>(indexes).size() == indexes.size();
+    }
+
+    static List<EncodedIndex> optimize(List<EncodedIndex> indexes,
+                                       List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs,
+                                       IndexListSelectionStrategy strategy) {
+        int n = indexes.size();
+        Map<EncodedIndex, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            positions.put(indexes.get(i), i);
+        }
+        List<List<Integer>> containing = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            containing.add(new ArrayList<>());
+        }
+        for (Pair<EncodedIndex, EncodedIndex> cc : containedContainingIndexPairs) {
+            containing.get(positions.get(cc.getLeft())).add(positions.get(cc.getRight()));
+        }
+
+        //the costliest indexes are the first ones to be merged away
+        long[][] costs = new long[n][];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            costs[i] = strategy.indexCost(indexes.get(i).getLength());
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> SearchContext.compare(costs[j], costs[i]));
+
+        int[] mergedInto = new int[n];  // left side of the matching: containing index of the contained one, or -1
+        int[] mergedFrom = new int[n];  // right side of the matching: contained index of the containing one, or -1
+        Arrays.fill(mergedInto, -1);
+        Arrays.fill(mergedFrom, -1);
+        boolean[] visited = new boolean[n];
+        for (int i : order) {
+            Arrays.fill(visited, false);
+            augment(i, containing, mergedInto, mergedFrom, visited);
+        }
+
+        //every top absorbs its chain, from the top down, and takes the place of the top in the list
+        List<EncodedIndex> optimizedIndexes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (mergedInto[i] == -1) {
+                EncodedIndex merged = indexes.get(i);
+                for (int j = mergedFrom[i]; j != -1; j = mergedFrom[j]) {
+                    merged = IndexOptimizer.mergeIndexPair(indexes.get(j), merged);
+                }
+                optimizedIndexes.add(merged);
+            }
+        }
+        return optimizedIndexes;
+    }
+
+    /**
+     * Looks for an augmenting path from the unmatched left vertex {@code i} (Kuhn's algorithm). A path only ever
+     * rematches left vertices, so the ones matched before stay matched.
+     */
+    private static boolean augment(int i, List<List<Integer>> containing, int[] mergedInto, int[] mergedFrom,
+                                   boolean[] visited) {
+        for (int j : containing.get(i)) {
+            if (visited[j]) {
+                continue;
+            }
+            visited[j] = true;
+            if (mergedFrom[j] == -1 || augment(mergedFrom[j], containing, mergedInto, mergedFrom, visited)) {
+                mergedInto[i] = j;
+                mergedFrom[j] = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
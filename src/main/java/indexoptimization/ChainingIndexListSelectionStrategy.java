@@ -1,6 +1,9 @@
 package indexoptimization;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Function;
 
 public class ChainingIndexListSelectionStrategy implements IndexListSelectionStrategy {
 
@@ -12,6 +15,9 @@ public class ChainingIndexListSelectionStrategy implements IndexListSelectionStr
 
     @Override
     public List<List<Index>> choseBestIndexSets(List<List<Index>> indexCandidates) {
+        if (isRankedByCost()) {
+            return choseCheapestIndexSets(indexCandidates);
+        }
         for (IndexListSelectionStrategy strategy : strategies) {
             indexCandidates = strategy.choseBestIndexSets(indexCandidates);
             if (indexCandidates.size() <= 1) {
@@ -20,4 +26,118 @@ public class ChainingIndexListSelectionStrategy implements IndexListSelectionStr
         }
         return indexCandidates;
     }
-}
\ No newline at end of file
+
+    /**
+     * Lexicographic order of sums is separable as well, as long as all the sums are.
+     */
+    @Override
+    public boolean isSeparable() {
+        return strategies.stream().allMatch(IndexListSelectionStrategy::isSeparable);
+    }
+
+    @Override
+    public boolean isMonotone() {
+        return strategies.stream().allMatch(IndexListSelectionStrategy::isMonotone);
+    }
+
+    /**
+     * Concatenates the costs of the chained strategies, up to the first strategy without a cost.
+     */
+    @Override
+    public long[] cost(List<Index> indexes) {
+        return concat(strategy -> strategy.cost(indexes));
+    }
+
+    @Override
+    public long[] costLowerBound(List<Index> permanentIndexes) {
+        return concat(strategy -> strategy.costLowerBound(permanentIndexes));
+    }
+
+    /**
+     * Only known if it is known for all the chained strategies, as the later ones break the ties of the earlier ones.
+     */
+    @Override
+    public long[] indexCost(int length) {
+        if (strategies.stream().anyMatch(strategy -> strategy.indexCost(length) == null)) {
+            return null;
+        }
+        return concat(strategy -> strategy.indexCost(length));
+    }
+
+    /**
+     * Chained strategies which all rank by cost rank by the concatenated cost, as the later ones only break the ties of
+     * the earlier ones.
+     */
+    @Override
+    public boolean isRankedByCost() {
+        return strategies.stream().allMatch(IndexListSelectionStrategy::isRankedByCost);
+    }
+
+    /**
+     * The chained strategies narrow down the candidates one after another, which is a lexicographic order of their
+     * orders, so the chain is incremental if all of them are.
+     */
+    @Override
+    public boolean isChoiceIncremental() {
+        return strategies.stream().allMatch(IndexListSelectionStrategy::isChoiceIncremental);
+    }
+
+    @Override
+    public long[] costChange(Index removed, Index added) {
+        if (strategies.stream().anyMatch(strategy -> strategy.costChange(removed, added) == null)) {
+            return null;
+        }
+        return concat(strategy -> strategy.costChange(removed, added));
+    }
+
+    /**
+     * Only known if it is known for all the chained strategies.
+     */
+    @Override
+    public String getFingerprint() {
+        StringBuilder fingerprint = new StringBuilder("chain(");
+        for (int i = 0; i < strategies.size(); i++) {
+            String strategyFingerprint = strategies.get(i).getFingerprint();
+            if (strategyFingerprint == null) {
+                return null;
+            }
+            fingerprint.append(i > 0 ? "," : "").append(strategyFingerprint);
+        }
+        return fingerprint.append(")").toString();
+    }
+
+    /**
+     * Single pass over the candidates with the concatenated costs, instead of one pass (and one list of the ties) per
+     * chained strategy.
+     */
+    private List<List<Index>> choseCheapestIndexSets(List<List<Index>> indexCandidates) {
+        long[] minCost = null;
+        List<List<Index>> bestIndexSetList = new ArrayList<>();
+        for (List<Index> indexes : indexCandidates) {
+            long[] cost = cost(indexes);
+            int comparison = minCost == null ? -1 : Arrays.compare(cost, minCost);
+            if (comparison < 0) {
+                bestIndexSetList.clear();
+                minCost = cost;
+            }
+            if (comparison <= 0) {
+                bestIndexSetList.add(indexes);
+            }
+        }
+        return bestIndexSetList;
+    }
+
+    private long[] concat(Function<IndexListSelectionStrategy, long[]> component) {
+        long[] result = new long[0];
+        for (IndexListSelectionStrategy strategy : strategies) {
+            long[] next = component.apply(strategy);
+            if (next == null) {
+                break;
+            }
+            long[] concatenated = Arrays.copyOf(result, result.length + next.length);
+            System.arraycopy(next, 0, concatenated, result.length, next.length);
+            result = concatenated;
+        }
+        return result.length > 0 ? result : null;
+    }
+}
@@ -0,0 +1,159 @@
+package indexoptimization;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Mutable graph of the contained-containing relation between indexes, used to keep the pairs up to date when indexes
+ * are added or removed, and to split the indexes into independent groups. Indexes are compared by identity (like in
+ * the pairs used by the search), and their order is the order in which they were added.
+ */
+final class ContainmentGraph {
+
+    private final List<EncodedIndex> indexes = new ArrayList<>();
+    private final Map<EncodedIndex, Set<EncodedIndex>> containedIndexes = new IdentityHashMap<>();
+    private final Map<EncodedIndex, Set<EncodedIndex>> containingIndexes = new IdentityHashMap<>();
+    private final FieldPostings postings = new FieldPostings();
+    private final List<EncodedIndex> slots = new ArrayList<>(); // indexes by their slot in the postings
+    private final Map<EncodedIndex, Integer> slotsByIndex = new IdentityHashMap<>();
+
+    static ContainmentGraph of(List<EncodedIndex> indexes) {
+        ContainmentGraph graph = new ContainmentGraph();
+        for (EncodedIndex index : indexes) {
+            graph.add(index);
+        }
+        return graph;
+    }
+
+    /**
+     * Adds the index, and the pairs it forms with the indexes already in the graph. Only the candidates found with
+     * {@link FieldPostings} are checked for containment.
+     */
+    void add(EncodedIndex index) {
+        Set<EncodedIndex> contained = newIdentitySet();
+        Set<EncodedIndex> containing = newIdentitySet();
+        BitSet containedCandidates = postings.getContainedCandidates(index);
+        for (int slot = containedCandidates.nextSetBit(0); slot >= 0; slot = containedCandidates.nextSetBit(slot + 1)) {
+            EncodedIndex other = slots.get(slot);
+            if (index.getLength() >= other.getLength() && IndexOptimizer.isContained(other, index)) {
+                contained.add(other);
+                containingIndexes.get(other).add(index);
+            }
+        }
+        BitSet containingCandidates = postings.getContainingCandidates(index);
+        for (int slot = containingCandidates.nextSetBit(0); slot >= 0; slot = containingCandidates.nextSetBit(slot + 1)) {
+            EncodedIndex other = slots.get(slot);
+            if (other.getLength() >= index.getLength() && IndexOptimizer.isContained(index, other)) {
+                containing.add(other);
+                containedIndexes.get(other).add(index);
+            }
+        }
+        indexes.add(index);
+        containedIndexes.put(index, contained);
+        containingIndexes.put(index, containing);
+        slotsByIndex.put(index, postings.add(index));
+        slots.add(index);
+    }
+
+    void remove(EncodedIndex index) {
+        int slot = slotsByIndex.remove(index);
+        postings.remove(slot, index);
+        slots.set(slot, null);
+        for (EncodedIndex contained : containedIndexes.remove(index)) {
+            containingIndexes.get(contained).remove(index);
+        }
+        for (EncodedIndex containing : containingIndexes.remove(index)) {
+            containedIndexes.get(containing).remove(index);
+        }
+        indexes.removeIf(i -> i == index);
+    }
+
+    List<EncodedIndex> getIndexes() {
+        return Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     * Splits the indexes into groups connected by pairs. Merging a pair never changes the pairs of another group, so
+     * the groups can be optimized independently. The groups are ordered by their first index, and each group keeps
+     * the order of the graph.
+     */
+    List<List<EncodedIndex>> getComponents() {
+        Map<EncodedIndex, Integer> componentIds = new IdentityHashMap<>();
+        List<List<EncodedIndex>> components = new ArrayList<>();
+        for (EncodedIndex index : indexes) {
+            if (componentIds.containsKey(index)) {
+                continue;
+            }
+            int componentId = components.size();
+            componentIds.put(index, componentId);
+            Deque<EncodedIndex> toVisit = new ArrayDeque<>();
+            toVisit.add(index);
+            while (!toVisit.isEmpty()) {
+                EncodedIndex current = toVisit.poll();
+                for (EncodedIndex neighbour : getNeighbours(current)) {
+                    if (componentIds.putIfAbsent(neighbour, componentId) == null) {
+                        toVisit.add(neighbour);
+                    }
+                }
+            }
+            components.add(new ArrayList<>());
+        }
+        for (EncodedIndex index : indexes) {
+            components.get(componentIds.get(index)).add(index);
+        }
+        return components;
+    }
+
+    /**
+     * Pairs between the given indexes, in the same order as if they were calculated from scratch for this list. The
+     * pairs are read from the edges found when the indexes were added, so only the pairs of the members are visited.
+     */
+    List<Pair<EncodedIndex, EncodedIndex>> getPairs(List<EncodedIndex> members) {
+        Map<EncodedIndex, Integer> positions = new IdentityHashMap<>(members.size());
+        for (int i = 0; i < members.size(); i++) {
+            positions.put(members.get(i), i);
+        }
+        List<Pair<EncodedIndex, EncodedIndex>> pairs = new ArrayList<>();
+        for (EncodedIndex containingIndex : members) {
+            Set<EncodedIndex> contained = containedIndexes.get(containingIndex);
+            if (contained.isEmpty()) {
+                continue;
+            }
+            //the contained indexes of each containing index are ordered like the members
+            int[] containedPositions = new int[contained.size()];
+            int numContained = 0;
+            for (EncodedIndex containedIndex : contained) {
+                Integer position = positions.get(containedIndex);
+                if (position != null) {
+                    containedPositions[numContained++] = position;
+                }
+            }
+            Arrays.sort(containedPositions, 0, numContained);
+            for (int k = 0; k < numContained; k++) {
+                pairs.add(Pair.of(members.get(containedPositions[k]), containingIndex));
+            }
+        }
+        return pairs;
+    }
+
+    private Iterable<EncodedIndex> getNeighbours(EncodedIndex index) {
+        List<EncodedIndex> neighbours = new ArrayList<>(containedIndexes.get(index));
+        neighbours.addAll(containingIndexes.get(index));
+        return neighbours;
+    }
+
+    private static Set<EncodedIndex> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+}
@@ -0,0 +1,43 @@
+package indexoptimization;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only {@code List<Index>} view of a list of {@link EncodedIndex} objects, used to pass search candidates to an
+ * {@link IndexListSelectionStrategy}. The indexes are decoded lazily, so strategies that only look at the size of the
+ * candidates do not pay for decoding at all.
+ */
+final class DecodedIndexList extends AbstractList<Index> implements RandomAccess {
+
+    private final List<EncodedIndex> encodedIndexes;
+    private final FieldDictionary dictionary;
+    private final Index[] decoded;
+
+    DecodedIndexList(List<EncodedIndex> encodedIndexes, FieldDictionary dictionary) {
+        this.encodedIndexes = encodedIndexes;
+        this.dictionary = dictionary;
+        this.decoded = new Index[encodedIndexes.size()];
+    }
+
+    List<EncodedIndex> getEncodedIndexes() {
+        return encodedIndexes;
+    }
+
+    @Override
+    public Index get(int i) {
+        Index index = decoded[i];
+        if (index == null) {
+            index = dictionary.decode(encodedIndexes.get(i));
+            decoded[i] = index;
+        }
+        return index;
+    }
+
+    @Override
+    public int size() {
+        return encodedIndexes.size();
+    }
+
+}
@@ -0,0 +1,313 @@
+package indexoptimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compact, immutable form of an {@link Index} used internally by the optimizer.
+ *
+ * Field names are replaced with the dense ids assigned by a {@link FieldDictionary}. Every field set is stored as a
+ * bitset over the field ids, or - if the dictionary holds more than {@link #SPARSE_THRESHOLD} fields and the bitsets
+ * would be mostly empty - as a sorted array of field ids. Equality, hash code and ordering only depend on the field
+ * ids, not on the representation, so indexes encoded in different modes can still be compared with each other.
+ *
+ * A field set never holds the same field twice. A field may still occur in more than one field set of an index, which
+ * is tracked by {@link #hasRepeatedFields()}, because the fast containment check relies on fields being unique.
+ */
+final class EncodedIndex implements Comparable<EncodedIndex> {
+
+    static final int SPARSE_THRESHOLD = 512;
+
+    private final long[][] bitSets;  // dense representation (null if sparse)
+    private final int[][] fieldIds;  // sparse representation (null if dense)
+    private final int length;
+    private final int hash;
+    private final boolean repeatedFields;
+
+    private EncodedIndex(int[][] sortedFieldIds, boolean dense) {
+        int len = 0;
+        int h = 1;
+        for (int[] ids : sortedFieldIds) {
+            len += ids.length;
+            h = 31 * h + Arrays.hashCode(ids);
+        }
+        this.length = len;
+        this.hash = h;
+        this.repeatedFields = sortedFieldIds.length > 1 && countDistinct(sortedFieldIds) < len;
+        if (dense) {
+            this.bitSets = new long[sortedFieldIds.length][];
+            for (int k = 0; k < sortedFieldIds.length; k++) {
+                this.bitSets[k] = toWords(sortedFieldIds[k]);
+            }
+            this.fieldIds = null;
+        } else {
+            this.bitSets = null;
+            this.fieldIds = sortedFieldIds;
+        }
+    }
+
+    static EncodedIndex encode(Index index, FieldDictionary dictionary) {
+        int[][] sets = new int[index.fieldSets.size()][];
+        for (int k = 0; k < sets.length; k++) {
+            sets[k] = index.fieldSets.get(k).getFields().stream()
+                    .mapToInt(field -> dictionary.intern(field.getName()))
+                    .sorted()
+                    .distinct()
+                    .toArray();
+        }
+        return new EncodedIndex(sets, dictionary.size() <= SPARSE_THRESHOLD);
+    }
+
+    /**
+     * Creates an index from the given field sets (sorted field ids) of the given dictionary.
+     */
+    static EncodedIndex of(int[][] sortedFieldIds, FieldDictionary dictionary) {
+        return new EncodedIndex(sortedFieldIds, dictionary.size() <= SPARSE_THRESHOLD);
+    }
+
+    /**
+     * Creates an index with the same representation as {@code template} from the given field sets (sorted field ids).
+     */
+    static EncodedIndex of(List<int[]> sortedFieldIds, EncodedIndex template) {
+        return new EncodedIndex(sortedFieldIds.toArray(new int[0][]), template.isDense());
+    }
+
+    Index toIndex(FieldDictionary dictionary) {
+        List<IndexFieldSet> sets = new ArrayList<>(getNumFieldSets());
+        for (int k = 0; k < getNumFieldSets(); k++) {
+            int[] ids = getFieldIds(k);
+            List<IndexField> fieldSet = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                fieldSet.add(dictionary.fieldOf(id));
+            }
+            sets.add(new IndexFieldSet(fieldSet));
+        }
+        return new Index(sets);
+    }
+
+    boolean isDense() {
+        return bitSets != null;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    int getNumFieldSets() {
+        return isDense() ? bitSets.length : fieldIds.length;
+    }
+
+    /**
+     * Rough estimate of the heap retained by this object (object headers, arrays and their contents), used to weigh
+     * memoization entries.
+     */
+    long estimateSizeInBytes() {
+        long size = 40 + 16 + 4L * getNumFieldSets();
+        for (int k = 0; k < getNumFieldSets(); k++) {
+            size += 16 + (isDense() ? 8L * bitSets[k].length : 4L * fieldIds[k].length);
+        }
+        return size;
+    }
+
+    boolean hasRepeatedFields() {
+        return repeatedFields;
+    }
+
+    int getFieldSetLength(int k) {
+        if (isDense()) {
+            int len = 0;
+            for (long word : bitSets[k]) {
+                len += Long.bitCount(word);
+            }
+            return len;
+        }
+        return fieldIds[k].length;
+    }
+
+    int[] getFieldIds(int k) {
+        if (isDense()) {
+            return BitSet.valueOf(bitSets[k]).stream().toArray();
+        }
+        return fieldIds[k].clone();
+    }
+
+    boolean fieldSetContains(int k, int id) {
+        if (isDense()) {
+            int w = id >>> 6;
+            return w < bitSets[k].length && (bitSets[k][w] & (1L << id)) != 0;
+        }
+        return Arrays.binarySearch(fieldIds[k], id) >= 0;
+    }
+
+    /**
+     * Number of fields that field set {@code k} of this index has in common with field set {@code l} of {@code other}.
+     * Does not allocate.
+     */
+    int intersectionSize(int k, EncodedIndex other, int l) {
+        if (isDense() && other.isDense()) {
+            long[] words1 = bitSets[k];
+            long[] words2 = other.bitSets[l];
+            int size = 0;
+            for (int w = Math.min(words1.length, words2.length) - 1; w >= 0; w--) {
+                size += Long.bitCount(words1[w] & words2[w]);
+            }
+            return size;
+        }
+        if (!isDense() && !other.isDense()) {
+            int[] ids1 = fieldIds[k];
+            int[] ids2 = other.fieldIds[l];
+            int size = 0;
+            for (int i = 0, j = 0; i < ids1.length && j < ids2.length; ) {
+                if (ids1[i] < ids2[j]) {
+                    i++;
+                } else if (ids1[i] > ids2[j]) {
+                    j++;
+                } else {
+                    size++;
+                    i++;
+                    j++;
+                }
+            }
+            return size;
+        }
+        EncodedIndex sparse = isDense() ? other : this;
+        EncodedIndex dense = isDense() ? this : other;
+        int size = 0;
+        for (int id : sparse.fieldIds[isDense() ? l : k]) {
+            if (dense.fieldSetContains(isDense() ? k : l, id)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Sorted ids of the fields that field set {@code k} of this index has in common with field set {@code l} of
+     * {@code other}.
+     */
+    int[] intersection(int k, EncodedIndex other, int l) {
+        int[] ids = getFieldIds(k);
+        int size = 0;
+        for (int id : ids) {
+            if (other.fieldSetContains(l, id)) {
+                ids[size++] = id;
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    BitSet getFieldSet(int k) {
+        if (isDense()) {
+            return BitSet.valueOf(bitSets[k]);
+        }
+        BitSet bitSet = new BitSet();
+        for (int id : fieldIds[k]) {
+            bitSet.set(id);
+        }
+        return bitSet;
+    }
+
+    List<BitSet> getFieldSets() {
+        List<BitSet> sets = new ArrayList<>(getNumFieldSets());
+        for (int k = 0; k < getNumFieldSets(); k++) {
+            sets.add(getFieldSet(k));
+        }
+        return sets;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof EncodedIndex))
+            return false;
+        EncodedIndex that = (EncodedIndex) o;
+        if (hash != that.hash || length != that.length || getNumFieldSets() != that.getNumFieldSets())
+            return false;
+        for (int k = 0; k < getNumFieldSets(); k++) {
+            if (!fieldSetEquals(k, that))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Canonical ordering, consistent with {@link #equals(Object)}. It is not meaningful beyond providing a stable
+     * order (e.g. for building memoization keys).
+     */
+    @Override
+    public int compareTo(EncodedIndex o) {
+        if (this == o)
+            return 0;
+        int c = Integer.compare(hash, o.hash);
+        if (c == 0)
+            c = Integer.compare(length, o.length);
+        if (c == 0)
+            c = Integer.compare(getNumFieldSets(), o.getNumFieldSets());
+        for (int k = 0; c == 0 && k < getNumFieldSets(); k++) {
+            c = compareFieldSet(k, o);
+        }
+        return c;
+    }
+
+    private boolean fieldSetEquals(int k, EncodedIndex o) {
+        if (isDense() && o.isDense())
+            return Arrays.equals(bitSets[k], o.bitSets[k]);
+        if (!isDense() && !o.isDense())
+            return Arrays.equals(fieldIds[k], o.fieldIds[k]);
+        return compareFieldSet(k, o) == 0;
+    }
+
+    private int compareFieldSet(int k, EncodedIndex o) {
+        return Arrays.compare(getWords(k), o.getWords(k));
+    }
+
+    private long[] getWords(int k) {
+        return isDense() ? bitSets[k] : toWords(fieldIds[k]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int k = 0; k < getNumFieldSets(); k++) {
+            sb.append("{");
+            int[] ids = getFieldIds(k);
+            for (int i = 0; i < ids.length; i++) {
+                sb.append(i > 0 ? "," : "").append(ids[i]);
+            }
+            sb.append("}");
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private static int countDistinct(int[][] fieldIds) {
+        BitSet distinct = new BitSet();
+        for (int[] ids : fieldIds) {
+            for (int id : ids) {
+                distinct.set(id);
+            }
+        }
+        return distinct.cardinality();
+    }
+
+    private static long[] toWords(int[] sortedIds) {
+        if (sortedIds.length == 0) {
+            return new long[0];
+        }
+        long[] words = new long[(sortedIds[sortedIds.length - 1] >>> 6) + 1];
+        for (int id : sortedIds) {
+            words[id >>> 6] |= 1L << id;
+        }
+        return words;
+    }
+
+}
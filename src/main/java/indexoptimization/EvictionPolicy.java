@@ -0,0 +1,26 @@
+package indexoptimization;
+
+/**
+ * Decides which entries a bounded {@link MemoStore} drops when it runs out of its entry or weight budget.
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Evicts the least recently used entry.
+     */
+    LRU,
+
+    /**
+     * Window TinyLFU: new entries go through a small LRU window, and are admitted to the main area only if they were
+     * requested more often than the entry they would replace (frequencies are estimated with a count-min sketch).
+     * Keeps the frequently reused subproblems even when many one-off states pass through the store.
+     */
+    TINY_LFU,
+
+    /**
+     * Evicts entries of the deepest subproblems first (least recently used first within the same depth). Shallow
+     * subproblems cover large parts of the search tree and are the most expensive ones to recompute.
+     */
+    SHALLOW_FIRST
+
+}
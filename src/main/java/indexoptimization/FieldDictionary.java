@@ -0,0 +1,116 @@
+package indexoptimization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps field names to dense integer ids (and back), so that the optimizer can work on {@link EncodedIndex} objects
+ * instead of comparing and hashing field name strings. Ids are assigned in the order in which the field names are
+ * first seen.
+ *
+ * Decoded indexes are hash-consed: equal encoded indexes (e.g. the same constrained index produced on different paths
+ * of the search) are decoded to one shared {@link Index} instance, which is safe as indexes are immutable. The table
+ * stops growing at {@link #MAX_DECODED_INDEXES} entries, after which indexes not in the table are decoded anew.
+ */
+final class FieldDictionary {
+
+    static final int MAX_DECODED_INDEXES = 1 << 16;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<IndexField> fields = new ArrayList<>();
+    private final Map<EncodedIndex, Index> decodedIndexes = new ConcurrentHashMap<>();
+
+    static FieldDictionary of(List<Index> indexes) {
+        FieldDictionary dictionary = new FieldDictionary();
+        for (Index index : indexes) {
+            for (IndexFieldSet fieldSet : index.fieldSets) {
+                for (IndexField field : fieldSet.getFields()) {
+                    dictionary.intern(field.getName());
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+            fields.add(new IndexField(name));
+        }
+        return id;
+    }
+
+    /**
+     * @return id of the field, or -1 if the field is not in the dictionary
+     */
+    int idOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    String nameOf(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Shared field object of the id (fields are immutable).
+     */
+    IndexField fieldOf(int id) {
+        return fields.get(id);
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    /**
+     * True if the ids both dictionaries have name the same fields, so that an index encoded with one of them means the
+     * same with the other. Ids are only ever appended, so a dictionary stays compatible with its earlier self, and
+     * dictionaries built from the same indexes are compatible with each other.
+     */
+    boolean isCompatibleWith(FieldDictionary other) {
+        if (other == this) {
+            return true;
+        }
+        int n = Math.min(names.size(), other.names.size());
+        return names.subList(0, n).equals(other.names.subList(0, n));
+    }
+
+    List<EncodedIndex> encode(List<Index> indexes) {
+        List<EncodedIndex> encoded = new ArrayList<>(indexes.size());
+        for (Index index : indexes) {
+            encoded.add(EncodedIndex.encode(index, this));
+        }
+        return encoded;
+    }
+
+    List<Index> decode(List<EncodedIndex> indexes) {
+        List<Index> decoded = new ArrayList<>(indexes.size());
+        for (EncodedIndex index : indexes) {
+            decoded.add(decode(index));
+        }
+        return decoded;
+    }
+
+    Index decode(EncodedIndex index) {
+        Index decoded = decodedIndexes.get(index);
+        if (decoded == null) {
+            decoded = index.toIndex(this);
+            if (decodedIndexes.size() < MAX_DECODED_INDEXES) {
+                Index previous = decodedIndexes.putIfAbsent(index, decoded);
+                if (previous != null) {
+                    decoded = previous;
+                }
+            }
+        }
+        return decoded;
+    }
+
+}
@@ -0,0 +1,126 @@
+package indexoptimization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Inverted index from field ids to the indexes which have them, used to find the candidates for contained-containing
+ * pairs without checking every pair of indexes. Indexes are identified by slots, which are assigned in the order in
+ * which the indexes are added and are not reused after a removal.
+ *
+ * Two necessary conditions of containment are tracked:
+ * <ul>
+ *     <li>every field of the contained index is a field of the containing one ({@link #fieldPostings}),</li>
+ *     <li>the first field sets of both indexes have a common field, as the common prefix starts with their
+ *         intersection ({@link #firstFieldSetPostings}).</li>
+ * </ul>
+ * The candidates still have to be checked with {@link IndexOptimizer#isContained(EncodedIndex, EncodedIndex)}.
+ */
+final class FieldPostings {
+
+    private final List<BitSet> fieldPostings = new ArrayList<>();         // by field id
+    private final List<BitSet> firstFieldSetPostings = new ArrayList<>(); // by field id
+    private final BitSet slots = new BitSet();                            // slots in use
+    private final BitSet emptySlots = new BitSet();                       // slots of indexes without fields
+    private int numSlots;
+
+    static FieldPostings of(List<EncodedIndex> indexes) {
+        FieldPostings postings = new FieldPostings();
+        for (EncodedIndex index : indexes) {
+            postings.add(index);
+        }
+        return postings;
+    }
+
+    /**
+     * @return slot of the index
+     */
+    int add(EncodedIndex index) {
+        int slot = numSlots++;
+        slots.set(slot);
+        emptySlots.set(slot, index.getLength() == 0);
+        for (int k = 0; k < index.getNumFieldSets(); k++) {
+            for (int id : index.getFieldIds(k)) {
+                getPosting(fieldPostings, id).set(slot);
+            }
+        }
+        for (int id : getFirstFieldSet(index)) {
+            getPosting(firstFieldSetPostings, id).set(slot);
+        }
+        return slot;
+    }
+
+    void remove(int slot, EncodedIndex index) {
+        slots.clear(slot);
+        emptySlots.clear(slot);
+        for (int k = 0; k < index.getNumFieldSets(); k++) {
+            for (int id : index.getFieldIds(k)) {
+                fieldPostings.get(id).clear(slot);
+            }
+        }
+        for (int id : getFirstFieldSet(index)) {
+            firstFieldSetPostings.get(id).clear(slot);
+        }
+    }
+
+    /**
+     * Slots of the indexes which may contain the given index: the ones having all of its fields and a common field in
+     * the first field set. May include the slot of the index itself.
+     */
+    BitSet getContainingCandidates(EncodedIndex contained) {
+        if (contained.getLength() == 0) {
+            return (BitSet) slots.clone(); // contained in every index
+        }
+        BitSet candidates = getFirstFieldSetCandidates(contained);
+        for (int k = 0; k < contained.getNumFieldSets() && !candidates.isEmpty(); k++) {
+            for (int id : contained.getFieldIds(k)) {
+                candidates.and(getPostingOrEmpty(fieldPostings, id));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Slots of the indexes which may be contained in the given index: the ones having a common field with it in the
+     * first field set, and the ones without fields. May include the slot of the index itself.
+     */
+    BitSet getContainedCandidates(EncodedIndex containing) {
+        BitSet candidates = getFirstFieldSetCandidates(containing);
+        candidates.or(emptySlots);
+        return candidates;
+    }
+
+    private BitSet getFirstFieldSetCandidates(EncodedIndex index) {
+        BitSet candidates = new BitSet();
+        for (int id : getFirstFieldSet(index)) {
+            candidates.or(getPostingOrEmpty(firstFieldSetPostings, id));
+        }
+        candidates.and(slots);
+        return candidates;
+    }
+
+    /**
+     * Fields of the first non-empty field set, which are the ones the common prefix with another index starts with.
+     */
+    private static int[] getFirstFieldSet(EncodedIndex index) {
+        for (int k = 0; k < index.getNumFieldSets(); k++) {
+            if (index.getFieldSetLength(k) > 0) {
+                return index.getFieldIds(k);
+            }
+        }
+        return new int[0];
+    }
+
+    private static BitSet getPosting(List<BitSet> postings, int id) {
+        while (postings.size() <= id) {
+            postings.add(new BitSet());
+        }
+        return postings.get(id);
+    }
+
+    private static BitSet getPostingOrEmpty(List<BitSet> postings, int id) {
+        return id < postings.size() ? postings.get(id) : new BitSet();
+    }
+
+}
@@ -0,0 +1,59 @@
+package indexoptimization;
+
+/**
+ * Statistics of a field of the indexed collection, as used by {@link StorageCostIndexListSelectionStrategy}.
+ */
+public final class FieldStatistics {
+
+    private final double averageKeyWidth;
+    private final double cardinality;
+    private final boolean multikey;
+    private final double averageArrayLength; // 1 for fields which are not arrays
+
+    private FieldStatistics(double averageKeyWidth, double cardinality, boolean multikey, double averageArrayLength) {
+        if (averageKeyWidth < 0 || cardinality < 1 || averageArrayLength < 1) {
+            throw new IllegalArgumentException("Invalid field statistics: key width " + averageKeyWidth
+                                               + ", cardinality " + cardinality
+                                               + ", array length " + averageArrayLength);
+        }
+        this.averageKeyWidth = averageKeyWidth;
+        this.cardinality = cardinality;
+        this.multikey = multikey;
+        this.averageArrayLength = averageArrayLength;
+    }
+
+    /**
+     * @param averageKeyWidth average size of the values of the field in an index key, in bytes
+     * @param cardinality     number of distinct values of the field
+     */
+    public static FieldStatistics of(double averageKeyWidth, double cardinality) {
+        return new FieldStatistics(averageKeyWidth, cardinality, false, 1);
+    }
+
+    /**
+     * Statistics of an array field, which makes the indexes on it multikey: a document has an index entry for each
+     * element of the array.
+     *
+     * @param averageArrayLength average number of elements of the array
+     */
+    public static FieldStatistics multikey(double averageKeyWidth, double cardinality, double averageArrayLength) {
+        return new FieldStatistics(averageKeyWidth, cardinality, true, averageArrayLength);
+    }
+
+    public double getAverageKeyWidth() {
+        return averageKeyWidth;
+    }
+
+    public double getCardinality() {
+        return cardinality;
+    }
+
+    public boolean isMultikey() {
+        return multikey;
+    }
+
+    public double getAverageArrayLength() {
+        return averageArrayLength;
+    }
+
+}
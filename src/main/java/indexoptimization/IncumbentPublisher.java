@@ -0,0 +1,59 @@
+package indexoptimization;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Publishes the index lists found during a search, skipping the ones which are not better than the last published
+ * one. The indexes may be searched as independent components, in which case every improvement of a component is
+ * published together with the best lists of the other components found so far. Lists are compared by their cost or -
+ * for strategies without costs - by the strategy itself.
+ */
+final class IncumbentPublisher {
+
+    private final SubmissionPublisher<List<Index>> publisher;
+    private final FieldDictionary dictionary;
+    private final IndexListSelectionStrategy strategy;
+    private final List<List<EncodedIndex>> bests;
+    private final long[][] bestCosts;
+    private final boolean[] offered;
+
+    /**
+     * @param components indexes of the components, the initial best lists
+     */
+    IncumbentPublisher(SubmissionPublisher<List<Index>> publisher,
+                       FieldDictionary dictionary,
+                       IndexListSelectionStrategy strategy,
+                       List<List<EncodedIndex>> components) {
+        this.publisher = publisher;
+        this.dictionary = dictionary;
+        this.strategy = strategy;
+        this.bests = new ArrayList<>(components);
+        this.bestCosts = new long[components.size()][];
+        this.offered = new boolean[components.size()];
+    }
+
+    synchronized void offer(int component, List<EncodedIndex> indexes, long[] cost) {
+        if (offered[component] && !isImprovement(component, indexes, cost)) {
+            return;
+        }
+        offered[component] = true;
+        bests.set(component, indexes);
+        bestCosts[component] = cost;
+        List<EncodedIndex> best = new ArrayList<>();
+        bests.forEach(best::addAll);
+        //slow subscribers miss some of the intermediate lists rather than blocking the search
+        publisher.offer(dictionary.decode(best), null);
+    }
+
+    private boolean isImprovement(int component, List<EncodedIndex> indexes, long[] cost) {
+        if (cost != null && bestCosts[component] != null) {
+            return SearchContext.compare(cost, bestCosts[component]) < 0;
+        }
+        List<Index> chosen = strategy.choseBestIndexSet(List.of(new DecodedIndexList(bests.get(component), dictionary),
+                                                                new DecodedIndexList(indexes, dictionary)));
+        return chosen instanceof DecodedIndexList && ((DecodedIndexList) chosen).getEncodedIndexes() == indexes;
+    }
+
+}
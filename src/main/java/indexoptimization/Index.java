@@ -1,45 +1,40 @@
 package indexoptimization;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
 
+/**
+ * Immutable index: a list of field sets, where the order of the field sets matters and the order of the fields within
+ * a field set does not. The length, hash code and sorted string form are computed once, and the getters return
+ * read-only views instead of copies.
+ */
 public class Index {
 
     final List<IndexFieldSet> fieldSets;
+    private final int length;
+    private final int hash;
+    //computed lazily, racy but idempotent
+    private List<IndexField> fields;
+    private String sortedString;
 
     public Index() {
-        fieldSets = new ArrayList<>();
+        this(List.of());
     }
 
     public Index(List<IndexFieldSet> fieldSets) {
-        this();
-        for (IndexFieldSet fieldSet : fieldSets) {
-            IndexFieldSet fieldSetCopy = new IndexFieldSet();
-            for (IndexField field : fieldSet.getFields()) {
-                fieldSetCopy.add(new IndexField(field.getName()));
-            }
-            this.fieldSets.add(fieldSetCopy);
-        }
+        this.fieldSets = List.copyOf(fieldSets); // field sets are immutable, so they are shared
+        this.length = this.fieldSets.stream().mapToInt(IndexFieldSet::getLength).sum();
+        this.hash = Objects.hashCode(this.fieldSets);
     }
 
     public List<IndexFieldSet> getFieldSets() {
-        return new ArrayList<>(fieldSets);
-    }
-
-    void addFieldSet(IndexFieldSet indexFieldSet) {
-        fieldSets.add(indexFieldSet);
-    }
-
-    void removeFieldSet(IndexFieldSet indexFieldSet) {
-        fieldSets.remove(indexFieldSet);
+        return fieldSets;
     }
 
     public int getLength() {
-        return fieldSets.stream()
-                .mapToInt(IndexFieldSet::getLength)
-                .sum();
+        return length;
     }
 
     public String toString() {
@@ -53,13 +48,18 @@ public class Index {
     }
 
     public String toStringSorted() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{");
-        for (IndexFieldSet fieldSet : fieldSets) {
-            sb.append(fieldSet.toStringSorted());
+        String s = sortedString;
+        if (s == null) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{");
+            for (IndexFieldSet fieldSet : fieldSets) {
+                sb.append(fieldSet.toStringSorted());
+            }
+            sb.append("}");
+            s = sb.toString();
+            sortedString = s;
         }
-        sb.append("}");
-        return sb.toString();
+        return s;
     }
 
     public static Index parseIndex(String s) {
@@ -67,9 +67,16 @@ public class Index {
     }
 
     public List<IndexField> getFields(){
-        return fieldSets.stream()
-                .flatMap(indexFieldSet -> indexFieldSet.getFields().stream())
-                .collect(Collectors.toList());
+        List<IndexField> f = fields;
+        if (f == null) {
+            List<IndexField> allFields = new ArrayList<>(length);
+            for (IndexFieldSet fieldSet : fieldSets) {
+                allFields.addAll(fieldSet.getFields());
+            }
+            f = Collections.unmodifiableList(allFields);
+            fields = f;
+        }
+        return f;
     }
 
     @Override
@@ -79,16 +86,19 @@ public class Index {
         if (!(o instanceof Index))
             return false;
         Index index = (Index) o;
-        return Objects.equals(fieldSets, index.fieldSets);
+        return hash == index.hash && Objects.equals(fieldSets, index.fieldSets);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(fieldSets);
+        return hash;
     }
 
+    /**
+     * Indexes are immutable, so the copy is the index itself.
+     */
     public Index copy(){
-        return new Index(fieldSets.stream().map(IndexFieldSet::copy).collect(Collectors.toList()));
+        return this;
     }
 
 }
@@ -0,0 +1,72 @@
+package indexoptimization;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Group of indexes connected by contained-containing pairs, together with their pairs. Merging a pair never changes
+ * the pairs of another group, so the groups can be optimized independently.
+ */
+final class IndexComponent {
+
+    final List<EncodedIndex> indexes;
+    final List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs;
+
+    private IndexComponent(List<EncodedIndex> indexes,
+                           List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs) {
+        this.indexes = indexes;
+        this.containedContainingIndexPairs = containedContainingIndexPairs;
+    }
+
+    static IndexComponent of(List<EncodedIndex> indexes,
+                             List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs) {
+        return new IndexComponent(indexes, containedContainingIndexPairs);
+    }
+
+    /**
+     * Splits the indexes into connected components. Both the components and the indexes and pairs within each of
+     * them keep the order of the input, so the pairs of a component are the same as if they were calculated for the
+     * component alone.
+     */
+    static List<IndexComponent> split(List<EncodedIndex> indexes,
+                                      List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs) {
+        Map<EncodedIndex, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < indexes.size(); i++) {
+            positions.put(indexes.get(i), i);
+        }
+        int[] parents = new int[indexes.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        for (Pair<EncodedIndex, EncodedIndex> cc : containedContainingIndexPairs) {
+            int root1 = find(parents, positions.get(cc.getLeft()));
+            int root2 = find(parents, positions.get(cc.getRight()));
+            parents[Math.max(root1, root2)] = Math.min(root1, root2);
+        }
+
+        //the root of a component is its first index, so the components are created in the order of the input
+        Map<Integer, IndexComponent> components = new LinkedHashMap<>();
+        for (int i = 0; i < indexes.size(); i++) {
+            components.computeIfAbsent(find(parents, i), root -> of(new ArrayList<>(), new ArrayList<>()))
+                    .indexes.add(indexes.get(i));
+        }
+        for (Pair<EncodedIndex, EncodedIndex> cc : containedContainingIndexPairs) {
+            components.get(find(parents, positions.get(cc.getLeft()))).containedContainingIndexPairs.add(cc);
+        }
+        return new ArrayList<>(components.values());
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+}
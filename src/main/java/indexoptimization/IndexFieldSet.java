@@ -1,38 +1,31 @@
 package indexoptimization;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
+/**
+ * Immutable set of fields of an {@link Index}, in the order in which they were given.
+ */
 public class IndexFieldSet {
     private final List<IndexField> fields;
 
     public IndexFieldSet() {
-        fields = new ArrayList<>();
+        this(List.of());
     }
 
     public IndexFieldSet(List<IndexField> fields) {
-        this();
-        this.fields.addAll(fields);
+        this.fields = List.copyOf(fields);
     }
 
     public List<IndexField> getFields() {
-        return new ArrayList<>(fields);
-    }
-
-    void add(IndexField field) {
-        fields.add(field);
+        return fields;
     }
 
     public boolean contains(IndexField field) {
         return fields.contains(field);
     }
 
-    void remove(IndexField field) {
-        fields.remove(field);
-    }
-
     public int getLength() {
         return fields.size();
     }
@@ -64,7 +57,10 @@ public class IndexFieldSet {
         return Objects.hashCode(fields);
     }
 
+    /**
+     * Field sets are immutable, so the copy is the field set itself.
+     */
     public IndexFieldSet copy(){
-        return new IndexFieldSet(fields);
+        return this;
     }
 }
@@ -0,0 +1,54 @@
+package indexoptimization;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memoization key of a search state: the indexes of the state in canonical order, so the key is the same no matter in
+ * which order the indexes were produced.
+ */
+final class IndexListKey {
+
+    private final EncodedIndex[] indexes;
+    private final int hash;
+
+    private IndexListKey(EncodedIndex[] indexes) {
+        this.indexes = indexes;
+        this.hash = Arrays.hashCode(indexes);
+    }
+
+    static IndexListKey of(List<EncodedIndex> indexes) {
+        EncodedIndex[] sorted = indexes.toArray(new EncodedIndex[0]);
+        Arrays.sort(sorted);
+        return new IndexListKey(sorted);
+    }
+
+    int size() {
+        return indexes.length;
+    }
+
+    EncodedIndex[] getIndexes() {
+        return indexes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof IndexListKey))
+            return false;
+        IndexListKey that = (IndexListKey) o;
+        return hash == that.hash && Arrays.equals(indexes, that.indexes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(indexes);
+    }
+
+}
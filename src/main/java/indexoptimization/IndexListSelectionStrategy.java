@@ -4,6 +4,11 @@ import java.util.List;
 
 public interface IndexListSelectionStrategy {
 
+    /**
+     * The equally good best lists among the candidates, in their order. The optimizer gives the strategy all the
+     * candidates of a search state at once, unless the strategy declares with {@link #isChoiceIncremental()} that
+     * the candidates can also be handed to it a few at a time.
+     */
     List<List<Index>> choseBestIndexSets(List<List<Index>> indexColCandidates);
 
     default List<Index> choseBestIndexSet(List<List<Index>> indexColCandidates) {
@@ -11,5 +16,111 @@ public interface IndexListSelectionStrategy {
         return bestIndexSets.isEmpty() ? null : bestIndexSets.get(0);
     }
 
+    /**
+     * Cost of the index list, compared lexicographically (lower is better). It has to agree with
+     * {@link #choseBestIndexSets(List)}: a list with a lower cost is never rejected in favour of a list with a higher
+     * cost. Strategies which do not rank the lists by a cost return null, which disables pruning of the search.
+     */
+    default long[] cost(List<Index> indexes) {
+        return null;
+    }
+
+    /**
+     * Lower bound of the cost of any index list which contains the given indexes (possibly with their fields
+     * reordered), or null if not known. The optimizer skips the parts of the search in which the bound is higher than
+     * the cost of the best list found so far.
+     */
+    default long[] costLowerBound(List<Index> permanentIndexes) {
+        return null;
+    }
+
+    /**
+     * True if the best list for a union of independent groups of indexes (no index of one group is contained in an
+     * index of another) is always the union of the best lists of the groups, e.g. if the strategy minimizes a sum
+     * over the indexes. Separable strategies allow the optimizer to search the groups separately.
+     */
+    default boolean isSeparable() {
+        return false;
+    }
+
+    /**
+     * True if a list never gets worse by removing one of its indexes, e.g. if the strategy minimizes the number of
+     * indexes. The optimizer then collapses duplicate input indexes before the search.
+     */
+    default boolean isMonotone() {
+        return false;
+    }
+
+    /**
+     * Cost of a single index of the given length, if the {@link #cost(List) cost} of a list is the sum of the costs of
+     * its indexes and only depends on their lengths, null otherwise. The costs must not be negative. Such strategies
+     * allow the optimizer to solve groups of indexes with a single field set each in polynomial time.
+     */
+    default long[] indexCost(int length) {
+        return null;
+    }
+
+    /**
+     * True if {@link #choseBestIndexSets(List)} keeps exactly the candidates with the lowest {@link #cost(List) cost},
+     * in their order. The optimizer then compares the candidates by their costs, which it updates with every step of
+     * the search (see {@link #costChange}), instead of handing the lists to the strategy.
+     */
+    default boolean isRankedByCost() {
+        return false;
+    }
+
+    /**
+     * True if {@link #choseBestIndexSets(List)} keeps exactly the candidates which no other candidate beats, in their
+     * order, under a total preorder of the lists that does not depend on the other candidates (e.g. a smaller number
+     * of indexes is better). Choosing among the best of the candidates seen so far and the next candidate then ends
+     * with the same lists as choosing among all of them, so the optimizer reduces the candidates of a search state as
+     * they come instead of keeping all of them. Strategies ranked by cost (see {@link #isRankedByCost()}) are always
+     * reduced that way.
+     */
+    default boolean isChoiceIncremental() {
+        return isRankedByCost();
+    }
+
+    /**
+     * Identifies the choices of the strategy: strategies with the same fingerprint have to choose the same lists. The
+     * memoized sub-problems of a strategy are only reused by optimizers with the same strategy object or with a
+     * strategy of the same fingerprint, also in other processes (see {@link MemoStore#persistent}). Null by default,
+     * which limits the reuse to the same strategy object.
+     */
+    default String getFingerprint() {
+        return null;
+    }
+
+    /**
+     * Change of the {@link #cost(List) cost} of a list when index {@code removed} is replaced by index {@code added},
+     * where either may be null if an index is only removed or only added. Null if the change can not be told from the
+     * two indexes alone. By default derived from {@link #indexCost(int)}.
+     */
+    default long[] costChange(Index removed, Index added) {
+        long[] change = null;
+        if (removed != null) {
+            long[] removedCost = indexCost(removed.getLength());
+            if (removedCost == null) {
+                return null;
+            }
+            change = new long[removedCost.length];
+            for (int i = 0; i < removedCost.length; i++) {
+                change[i] -= removedCost[i];
+            }
+        }
+        if (added != null) {
+            long[] addedCost = indexCost(added.getLength());
+            if (addedCost == null) {
+                return null;
+            }
+            if (change == null) {
+                change = new long[addedCost.length];
+            }
+            for (int i = 0; i < addedCost.length; i++) {
+                change[i] += addedCost[i];
+            }
+        }
+        return change;
+    }
 
 }
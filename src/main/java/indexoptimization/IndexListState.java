@@ -0,0 +1,165 @@
+package indexoptimization;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Index list of a search state, stored as a delta to the list the search started with: the positions of the removed
+ * indexes, and the indexes which replaced others (constrained containing indexes). Merging a pair creates the next
+ * state by copying the removed positions (one bit per index) and prepending one replacement, so the states along a
+ * path share everything else. The list itself is only built when the state is read, and then kept.
+ *
+ * If the selection strategy can update the cost of a list from the merged indexes alone, the state also carries its
+ * cost, so the cost is known without reading the list.
+ *
+ * Like the rest of the search, the list tells indexes apart by identity: the merged indexes are looked up by reference
+ * among the indexes of the state.
+ */
+final class IndexListState extends AbstractList<EncodedIndex> implements RandomAccess {
+
+    private final Base base;
+    private final long[] removed;             // bitset of the removed positions of the base list
+    private final Replacement replacements;   // newest first, null if there are none
+    private final int size;
+    final long[] cost;                        // null if not tracked
+    private volatile EncodedIndex[] indexes;  // built on first read
+
+    private IndexListState(Base base, long[] removed, Replacement replacements, int size, long[] cost) {
+        this.base = base;
+        this.removed = removed;
+        this.replacements = replacements;
+        this.size = size;
+        this.cost = cost;
+    }
+
+    /**
+     * @param cost cost of the indexes, or null if the cost is not tracked
+     */
+    static IndexListState of(List<EncodedIndex> indexes, long[] cost) {
+        EncodedIndex[] baseIndexes = indexes.toArray(new EncodedIndex[0]);
+        Map<EncodedIndex, Integer> positions = new IdentityHashMap<>(baseIndexes.length);
+        for (int i = 0; i < baseIndexes.length; i++) {
+            positions.put(baseIndexes[i], i);
+        }
+        return new IndexListState(new Base(baseIndexes, positions), new long[(baseIndexes.length + 63) >>> 6], null,
+                                  baseIndexes.length, cost);
+    }
+
+    /**
+     * State after removing {@code contained} and replacing {@code containing} with {@code constrainedContaining}.
+     *
+     * @param costChange change of the cost by the merge, or null if not known (the cost is then not tracked anymore)
+     */
+    IndexListState merge(EncodedIndex contained, EncodedIndex containing, EncodedIndex constrainedContaining,
+                         long[] costChange) {
+        int removedPosition = positionOf(contained);
+        long[] newRemoved = removed.clone();
+        newRemoved[removedPosition >>> 6] |= 1L << removedPosition;
+        Replacement newReplacements = new Replacement(positionOf(containing), constrainedContaining, replacements);
+        long[] newCost = null;
+        if (cost != null && costChange != null) {
+            newCost = new long[cost.length];
+            for (int i = 0; i < cost.length; i++) {
+                newCost[i] = cost[i] + costChange[i];
+            }
+        }
+        return new IndexListState(base, newRemoved, newReplacements, size - 1, newCost);
+    }
+
+    @Override
+    public EncodedIndex get(int i) {
+        return getIndexes()[i];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return getIndexes().clone();
+    }
+
+    private EncodedIndex[] getIndexes() {
+        EncodedIndex[] result = indexes;
+        if (result == null) {
+            EncodedIndex[] current = base.indexes.clone();
+            boolean[] replaced = new boolean[current.length];
+            for (Replacement r = replacements; r != null; r = r.next) {
+                if (!replaced[r.position]) { // only the newest replacement of a position counts
+                    replaced[r.position] = true;
+                    current[r.position] = r.index;
+                }
+            }
+            result = new EncodedIndex[size];
+            int k = 0;
+            for (int position = 0; position < current.length; position++) {
+                if ((removed[position >>> 6] & (1L << position)) == 0) {
+                    result[k++] = current[position];
+                }
+            }
+            indexes = result;
+        }
+        return result;
+    }
+
+    /**
+     * Position in the base list of an index of this state: the position it replaced, or its own.
+     */
+    private int positionOf(EncodedIndex index) {
+        for (Replacement r = replacements; r != null; r = r.next) {
+            if (r.index == index) {
+                return r.position;
+            }
+        }
+        Integer position = base.positions.get(index);
+        if (position == null) {
+            throw new IllegalArgumentException("Index not in the list: " + index);
+        }
+        return position;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof IndexListState ? Arrays.equals(getIndexes(), ((IndexListState) o).getIndexes())
+                                           : super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(getIndexes());
+    }
+
+    /**
+     * List the search started with, shared by all its states.
+     */
+    private static final class Base {
+
+        final EncodedIndex[] indexes;
+        final Map<EncodedIndex, Integer> positions; // by identity
+
+        Base(EncodedIndex[] indexes, Map<EncodedIndex, Integer> positions) {
+            this.indexes = indexes;
+            this.positions = positions;
+        }
+    }
+
+    private static final class Replacement {
+
+        final int position;
+        final EncodedIndex index;
+        final Replacement next;
+
+        Replacement(int position, EncodedIndex index, Replacement next) {
+            this.position = position;
+            this.index = index;
+            this.next = next;
+        }
+    }
+
+}
@@ -4,24 +4,30 @@ import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jetbrains.annotations.NotNull;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
-import static java.util.Collections.emptyList;
-import static java.util.stream.Collectors.toList;
-
 /**
  * IndexOptimizer generates an optimal subset of indexes, based on the set of indexes provided as input.
  * The optimizer seeks for a possibility of covering one index with another index in the input by reordering the fields
@@ -66,6 +72,10 @@ import static java.util.stream.Collectors.toList;
  * - solving the sub-problem for the new set of indexes and the remaining contained-containing pairs
  * After collecting the results from the recursive calls, the best set is selected according to the configured strategy.
  *
+ * The search does not operate on {@link Index} objects directly. Field names are first replaced with dense ids (see
+ * {@link FieldDictionary}) and each index is encoded as a sequence of field id bitsets (see {@link EncodedIndex}).
+ * The results are converted back to {@link Index} objects only when they are returned to the caller.
+ *
  * ### Example
  *
  * For the given index set:
@@ -82,29 +92,44 @@ import static java.util.stream.Collectors.toList;
  *     {{a,z}
  *     {{b,r}}
  */
-public class IndexOptimizer {
+public class IndexOptimizer implements AutoCloseable {
 
     // compile-time config:
     private static final boolean removeDuplicateFields = false;
     public static final int FAST_OPTIMIZER_MAX_NUM_PATHS_PER_STEP = 3;
+    @VisibleForTesting static final int MAX_FORK_DEPTH = 8;
+    private static final int MIN_FORK_PAIRS = 3;
+    private static final int MIN_PARALLEL_PAIRS = 4096; // pairs to check before pair work is split into tasks
 
     // runtime config:
-    @VisibleForTesting boolean maskKeyNames;
     @VisibleForTesting boolean memoize;
-    @VisibleForTesting int numThreads;
+    @VisibleForTesting Executor executor; // null: the search runs in the calling thread
+    @VisibleForTesting int maxForkDepth;
+    private boolean ownsExecutor;
     @VisibleForTesting IndexListSelectionStrategy indexListSelectionStrategy;
     @VisibleForTesting int maxNumPathsPerStep;
-
-    private final Map<String, List<Index>> optimizedIndexesMemoizer;
+    @VisibleForTesting int beamWidth;
+    @VisibleForTesting MemoStore memoStore;
+    @VisibleForTesting boolean prune;
+    @VisibleForTesting boolean reduceSymmetries;
+    @VisibleForTesting boolean coverChains;
+    private PairOrderingHeuristic pairOrderingHeuristic;
+    @VisibleForTesting boolean compareByCost;
 
     private IndexOptimizer() {
-        this.maskKeyNames = true;
         this.memoize = true;
-        this.numThreads = 1;
+        this.executor = null;
+        this.maxForkDepth = 0;
         this.indexListSelectionStrategy = new ChainingIndexListSelectionStrategy(
                 new SmallestIndexListSelectionStrategy(), new MinSumOfSquaresIndexListSelectionStrategy());
         this.maxNumPathsPerStep = -1;
-        this.optimizedIndexesMemoizer = new ConcurrentHashMap<>();
+        this.beamWidth = -1;
+        this.memoStore = MemoStore.unbounded();
+        this.prune = true;
+        this.reduceSymmetries = true;
+        this.coverChains = true;
+        this.pairOrderingHeuristic = PairOrderingHeuristic.FEWEST_CONTAINED_FIRST;
+        this.compareByCost = true;
     }
 
     public static IndexOptimizer createDefaultSingleThreadedOptimizer() {
@@ -117,112 +142,544 @@ public class IndexOptimizer {
         return indexOptimizer;
     }
 
+    /**
+     * Creates an optimizer which owns a {@link ForkJoinPool} with the given parallelism. The pool is shut down by
+     * {@link #close()}.
+     */
     public static IndexOptimizer createDefaultMultiThreadedOptimizer(int numThreads) {
         IndexOptimizer indexOptimizer = new IndexOptimizer();
-        indexOptimizer.numThreads = numThreads;
+        indexOptimizer.useOwnedExecutor(new ForkJoinPool(numThreads), MAX_FORK_DEPTH);
         return indexOptimizer;
     }
 
     public static IndexOptimizer createFastMultiThreadedOptimizer(int numThreads) {
+        IndexOptimizer indexOptimizer = createDefaultMultiThreadedOptimizer(numThreads);
+        indexOptimizer.maxNumPathsPerStep = FAST_OPTIMIZER_MAX_NUM_PATHS_PER_STEP;
+        return indexOptimizer;
+    }
+
+    /**
+     * Creates an optimizer which runs a beam search instead of the exhaustive search: on every depth, only the
+     * {@code beamWidth} most promising states are expanded further (see {@link BeamSearch}). The time and memory
+     * needed grow linearly with the beam width, and the result is usually better than the one of the fast optimizer
+     * for the same effort, but it is not guaranteed to be optimal.
+     */
+    public static IndexOptimizer createBeamSearchOptimizer(int beamWidth) {
+        if (beamWidth < 1) {
+            throw new IllegalArgumentException("Beam width must be positive: " + beamWidth);
+        }
         IndexOptimizer indexOptimizer = new IndexOptimizer();
+        indexOptimizer.beamWidth = beamWidth;
+        return indexOptimizer;
+    }
+
+    /**
+     * Creates an optimizer which explores the branches of the search on virtual threads. Requires JDK 21 or newer.
+     *
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     */
+    public static IndexOptimizer createDefaultVirtualThreadOptimizer() {
+        IndexOptimizer indexOptimizer = new IndexOptimizer();
+        indexOptimizer.useOwnedExecutor(newVirtualThreadPerTaskExecutor(), MAX_FORK_DEPTH);
+        return indexOptimizer;
+    }
+
+    public static IndexOptimizer createFastVirtualThreadOptimizer() {
+        IndexOptimizer indexOptimizer = createDefaultVirtualThreadOptimizer();
         indexOptimizer.maxNumPathsPerStep = FAST_OPTIMIZER_MAX_NUM_PATHS_PER_STEP;
-        indexOptimizer.numThreads = numThreads;
         return indexOptimizer;
     }
 
-    public List<Index> optimizeIndexes(List<Index> indexes) {
-        indexes = sanitizeIndexes(indexes);
-        Map<String, String> mapping = new HashMap<>();
-        if (maskKeyNames) {
-            mapping = calculateFieldMapping(indexes);
-            indexes = mapIndexes(indexes, mapping);
+    /**
+     * Runs the search on the given executor, which stays owned by the caller ({@link #close()} does not shut it down).
+     * This way a single bounded pool can be shared by all optimizers in the process. A {@link ForkJoinPool} is used
+     * for work stealing on all levels of the search. Any other executor only gets the branches of the first level,
+     * because the tasks of the lower levels would block its threads while waiting for their subtasks. Passing
+     * {@code null} makes the search run in the calling thread.
+     */
+    public void setExecutor(Executor executor) {
+        useExecutor(executor, executor instanceof ForkJoinPool ? MAX_FORK_DEPTH : 1, false);
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Shuts down the executor created by the factory method, if any. An executor set with
+     * {@link #setExecutor(Executor)} is left running.
+     */
+    @Override
+    public void close() {
+        useExecutor(null, 0, false);
+    }
+
+    private void useOwnedExecutor(ExecutorService executor, int maxForkDepth) {
+        useExecutor(executor, maxForkDepth, true);
+    }
+
+    private void useExecutor(Executor executor, int maxForkDepth, boolean owned) {
+        if (ownsExecutor) {
+            ((ExecutorService) this.executor).shutdown();
         }
-        List<Pair<Index, Index>> containedContainingIndexPairs = calculateContainedContainingIndexPairs(indexes);
-        if (!containedContainingIndexPairs.isEmpty()) {
-            indexes = optimizeIndexes(indexes, containedContainingIndexPairs);
+        this.executor = executor;
+        this.maxForkDepth = executor != null ? maxForkDepth : 0;
+        this.ownsExecutor = owned;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        //looked up reflectively, so that the library still runs on JDK 11
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21 or newer", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
         }
-        return mapIndexes(indexes, reverseMapping(mapping));
     }
 
-    private List<Index> optimizeIndexes(List<Index> indexes, List<Pair<Index, Index>> containedContainingIndexPairs) {
-        List<Index> optimized;
-        if (numThreads > 1) {
-            List<Future<List<Index>>> futures = new ArrayList<>();
-            ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
-            List<Pair<Index, Index>> containedContainingIndexPairsSync =
-                    Collections.synchronizedList(containedContainingIndexPairs);
+    /**
+     * Replaces the store of memoized sub-problems (by default an unbounded one, see {@link MemoStore#unbounded()}).
+     * The store can be shared by multiple optimizers. The sub-problems memoized by one of them are only reused by the
+     * others with the same selection strategy (see {@link IndexListSelectionStrategy#getFingerprint()}) and the same
+     * limit of paths per step.
+     */
+    public void setMemoStore(MemoStore memoStore) {
+        this.memoStore = memoStore;
+    }
 
-            sortContainedContainingIndexPair(containedContainingIndexPairs, 0, containedContainingIndexPairs.size());
-            int to = maxNumPathsPerStep >= 0
-                    ? Math.min(containedContainingIndexPairs.size(), maxNumPathsPerStep)
-                    : containedContainingIndexPairs.size();
+    public MemoStore getMemoStore() {
+        return memoStore;
+    }
 
-            for (int i = 0; i < to; i++) {
-                int ii = i; // has to be effectively final
-                Future<List<Index>> future = executorService.submit(
-                        () -> optimizeIndexesRecursive(indexes, containedContainingIndexPairsSync, ii,ii + 1)
-                );
-                futures.add(future);
-            }
-            List<List<Index>> optimizedSublists = new ArrayList<>();
-            for (Future<List<Index>> future : futures) {
-                try {
-                    optimizedSublists.add(future.get());
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new RuntimeException(e);
-                }
+    /**
+     * Replaces the strategy choosing among the candidate index lists (by default the smallest list, then the lowest
+     * sum of squared index lengths). The sub-problems memoized with another strategy are not reused.
+     */
+    public void setIndexListSelectionStrategy(IndexListSelectionStrategy indexListSelectionStrategy) {
+        this.indexListSelectionStrategy = indexListSelectionStrategy;
+    }
+
+    public IndexListSelectionStrategy getIndexListSelectionStrategy() {
+        return indexListSelectionStrategy;
+    }
+
+    /**
+     * Replaces the order in which the search tries the pairs of a state (by default
+     * {@link PairOrderingHeuristic#FEWEST_CONTAINED_FIRST}). The order does not change the result of an exhaustive
+     * search, only how fast it gets there.
+     */
+    public void setPairOrderingHeuristic(PairOrderingHeuristic pairOrderingHeuristic) {
+        if (pairOrderingHeuristic == null) {
+            throw new IllegalArgumentException("Pair ordering heuristic must not be null");
+        }
+        this.pairOrderingHeuristic = pairOrderingHeuristic;
+    }
+
+    public PairOrderingHeuristic getPairOrderingHeuristic() {
+        return pairOrderingHeuristic;
+    }
+
+    public List<Index> optimizeIndexes(List<Index> indexes) {
+        return optimizeIndexes(indexes, (Duration) null).getIndexes();
+    }
+
+    /**
+     * Anytime variant of {@link #optimizeIndexes(List)}. The search dives to a first complete solution and keeps
+     * improving it until it finishes or the time budget runs out, in which case the best index list found so far is
+     * returned. The budget covers the search only, and the sub-problems still being explored when it runs out are
+     * not memoized.
+     *
+     * @param timeBudget maximum duration of the search, or null for no limit
+     */
+    public OptimizationResult optimizeIndexes(List<Index> indexes, Duration timeBudget) {
+        return optimizeIndexes(indexes, timeBudget, null);
+    }
+
+    /**
+     * Optimizes the index lists of many collections, given by collection name. The collections are spread over the
+     * optimizer's executor, the largest first, so that a large collection does not start last and keep the batch
+     * running after the rest of the executor went idle. Collections with the same indexes are optimized once. Every
+     * collection is encoded with a field dictionary of its own, so the fields of the other collections do not make its
+     * encoded indexes any larger, and the memoized sub-problems of one collection are reused by the others as far as
+     * their dictionaries agree on the field ids.
+     *
+     * On a {@link ForkJoinPool}, the searches of the collections fork their branches into the same pool. Any other
+     * executor only gets the collections as tasks, each of them searched in a single thread, so that no thread of the
+     * executor is blocked waiting for the branches of its search.
+     */
+    public BatchOptimizationResult optimizeCollections(Map<String, List<Index>> indexesByCollection) {
+        long start = System.nanoTime();
+        Map<String, List<Index>> sanitizedIndexesByCollection = new LinkedHashMap<>();
+        indexesByCollection.forEach(
+                (collection, indexes) -> sanitizedIndexesByCollection.put(collection, sanitizeIndexes(indexes)));
+        List<List<Index>> inputs = new ArrayList<>(new LinkedHashSet<>(sanitizedIndexesByCollection.values()));
+        inputs.sort(Comparator.comparingInt((List<Index> indexes) -> indexes.size()).reversed());
+
+        List<BatchRun> runs = runBatch(inputs);
+
+        Map<List<Index>, BatchRun> runsByIndexes = new HashMap<>();
+        long totalNanos = 0;
+        for (BatchRun run : runs) {
+            runsByIndexes.put(run.indexes, run);
+            totalNanos += run.nanos;
+        }
+        Map<String, OptimizationResult> results = new LinkedHashMap<>();
+        Map<String, Duration> durations = new LinkedHashMap<>();
+        sanitizedIndexesByCollection.forEach((collection, indexes) -> {
+            BatchRun run = runsByIndexes.get(indexes);
+            results.put(collection, run.result);
+            durations.put(collection, Duration.ofNanos(run.nanos));
+        });
+        return new BatchOptimizationResult(Collections.unmodifiableMap(results),
+                                           Collections.unmodifiableMap(durations),
+                                           runs.size(),
+                                           Duration.ofNanos(totalNanos),
+                                           Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Runs the optimizations of the batch, in the order of the inputs as far as the executor allows.
+     */
+    private List<BatchRun> runBatch(List<List<Index>> inputs) {
+        if (executor instanceof ForkJoinPool && ForkJoinTask.getPool() != executor) {
+            return ((ForkJoinPool) executor).invoke(ForkJoinTask.adapt(() -> runBatch(inputs)));
+        }
+        List<BatchRun> runs = new ArrayList<>(inputs.size());
+        if (executor == null) {
+            for (List<Index> input : inputs) {
+                runs.add(runBatchOptimization(input, null));
+            }
+        } else if (ForkJoinTask.getPool() == executor) {
+            List<ForkJoinTask<BatchRun>> tasks = new ArrayList<>(inputs.size());
+            for (List<Index> input : inputs) {
+                tasks.add(ForkJoinTask.adapt(() -> runBatchOptimization(input, executor)));
+            }
+            //idle workers steal from the end of the queue the tasks were forked to first, so the largest collections
+            //are forked first, and the first one runs in this thread
+            for (int i = 1; i < tasks.size(); i++) {
+                tasks.get(i).fork();
+            }
+            runs.add(tasks.get(0).invoke());
+            for (int i = 1; i < tasks.size(); i++) {
+                runs.add(tasks.get(i).join());
             }
-            optimizedSublists.add(indexes);
-            optimized = indexListSelectionStrategy.choseBestIndexSet(optimizedSublists);
         } else {
-            optimized =
-                    optimizeIndexesRecursive(indexes,containedContainingIndexPairs,0, containedContainingIndexPairs.size());
+            List<CompletableFuture<BatchRun>> futures = new ArrayList<>(inputs.size());
+            for (List<Index> input : inputs) {
+                futures.add(CompletableFuture.supplyAsync(() -> runBatchOptimization(input, null), executor));
+            }
+            for (CompletableFuture<BatchRun> future : futures) {
+                runs.add(join(future));
+            }
         }
-        return optimized;
+        return runs;
     }
 
-    @NotNull
-    static Map<String, String> calculateFieldMapping(List<Index> indexes) {
-        Map<String, String> mapping = new HashMap<>();
-        for (Index index : indexes) {
-            for (IndexFieldSet fieldSet : index.fieldSets) {
-                for (IndexField field : fieldSet.getFields()) {
-                    if (!mapping.containsKey(field.getName())) {
-                        mapping.put(field.getName(), Integer.toString(mapping.size()));
-                    }
-                }
+    private BatchRun runBatchOptimization(List<Index> indexes, Executor searchExecutor) {
+        long start = System.nanoTime();
+        OptimizationResult result = optimizeSanitizedIndexes(indexes, FieldDictionary.of(indexes), searchExecutor,
+                                                             null, null);
+        return new BatchRun(indexes, result, System.nanoTime() - start);
+    }
+
+    private static final class BatchRun {
+
+        final List<Index> indexes;
+        final OptimizationResult result;
+        final long nanos;
+
+        BatchRun(List<Index> indexes, OptimizationResult result, long nanos) {
+            this.indexes = indexes;
+            this.result = result;
+            this.nanos = nanos;
+        }
+    }
+
+    private OptimizationResult optimizeIndexes(List<Index> indexes, Duration timeBudget, OptimizationHandle handle) {
+        indexes = sanitizeIndexes(indexes);
+        return optimizeSanitizedIndexes(indexes, FieldDictionary.of(indexes), executor, timeBudget, handle);
+    }
+
+    /**
+     * @param dictionary     dictionary holding all the fields of the indexes
+     * @param searchExecutor executor to search on, the optimizer's executor or null
+     */
+    private OptimizationResult optimizeSanitizedIndexes(List<Index> indexes,
+                                                        FieldDictionary dictionary,
+                                                        Executor searchExecutor,
+                                                        Duration timeBudget,
+                                                        OptimizationHandle handle) {
+        List<EncodedIndex> encodedIndexes = dictionary.encode(indexes);
+        if (reduceSymmetries && indexListSelectionStrategy.isMonotone()) {
+            //a duplicate is always covered by its first copy for free, and would only mirror the branches of the copy
+            encodedIndexes = new ArrayList<>(new LinkedHashSet<>(encodedIndexes));
+        }
+        List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs = calculateContainedContainingIndexPairs(
+                encodedIndexes, getParallelPool((long) encodedIndexes.size() * encodedIndexes.size()));
+        if (containedContainingIndexPairs.isEmpty()) {
+            return new OptimizationResult(dictionary.decode(encodedIndexes), true, false, false);
+        }
+
+        //indexes not connected by any pair do not influence each other, so if the best list for the whole set is
+        //made of the best lists for the groups, the groups are searched separately
+        List<IndexComponent> components = indexListSelectionStrategy.isSeparable()
+                ? IndexComponent.split(encodedIndexes, containedContainingIndexPairs)
+                : List.of(IndexComponent.of(encodedIndexes, containedContainingIndexPairs));
+        IncumbentPublisher incumbentPublisher = handle != null
+                ? new IncumbentPublisher(handle.getPublisher(), dictionary, indexListSelectionStrategy,
+                                         components.stream().map(c -> c.indexes).collect(Collectors.toList()))
+                : null;
+        SearchContext context = newSearchContext(dictionary, searchExecutor, timeBudget, incumbentPublisher);
+        if (handle != null) {
+            handle.attach(context);
+        }
+        List<Solution> solutions = optimizeComponents(components, context);
+
+        List<EncodedIndex> optimizedIndexes = new ArrayList<>(encodedIndexes.size());
+        boolean exact = true;
+        boolean stopped = false;
+        for (Solution solution : solutions) {
+            optimizedIndexes.addAll(solution.indexes);
+            exact &= solution.isExact();
+            stopped |= solution.stopped;
+        }
+        return new OptimizationResult(dictionary.decode(optimizedIndexes),
+                                      exact && maxNumPathsPerStep < 0,
+                                      stopped && !context.isCancelled(),
+                                      stopped && context.isCancelled());
+    }
+
+    /**
+     * Searches the components, in parallel if the optimizer has an executor. The components are independent, so each
+     * of them gets its own incumbent for pruning.
+     */
+    private List<Solution> optimizeComponents(List<IndexComponent> components, SearchContext context) {
+        if (components.size() == 1) {
+            IndexComponent component = components.get(0);
+            return List.of(optimizeIndexes(component, context.forComponent(0, context.maxForkDepth)));
+        }
+        if (context.executor instanceof ForkJoinPool && ForkJoinTask.getPool() != context.executor) {
+            return ((ForkJoinPool) context.executor).invoke(ForkJoinTask.adapt(() -> optimizeComponents(components, context)));
+        }
+
+        List<Solution> solutions = new ArrayList<>(components.size());
+        if (context.executor == null) {
+            for (int i = 0; i < components.size(); i++) {
+                solutions.add(optimizeComponent(components.get(i), context.forComponent(i, 0)));
+            }
+        } else if (ForkJoinTask.getPool() == context.executor) {
+            List<ForkJoinTask<Solution>> tasks = new ArrayList<>(components.size());
+            for (int i = 0; i < components.size(); i++) {
+                IndexComponent component = components.get(i);
+                SearchContext componentContext = context.forComponent(i, context.maxForkDepth);
+                tasks.add(ForkJoinTask.adapt(() -> optimizeComponent(component, componentContext)));
             }
+            ForkJoinTask.invokeAll(tasks);
+            for (ForkJoinTask<Solution> task : tasks) {
+                solutions.add(task.join());
+            }
+        } else {
+            //the components are the tasks, only an executor which can block cheaply (virtual threads) gets more
+            int componentMaxForkDepth = context.maxForkDepth > 1 ? context.maxForkDepth : 0;
+            List<CompletableFuture<Solution>> futures = new ArrayList<>(components.size());
+            for (int i = 0; i < components.size(); i++) {
+                IndexComponent component = components.get(i);
+                SearchContext componentContext = context.forComponent(i, componentMaxForkDepth);
+                futures.add(CompletableFuture.supplyAsync(() -> optimizeComponent(component, componentContext),
+                                                          context.executor));
+            }
+            solutions.addAll(joinAll(futures));
+        }
+        return solutions;
+    }
+
+    /**
+     * Pool to split pair work on (finding or revalidating the given number of pairs), or null if the work is too small
+     * or the executor is not a fork-join pool. The chunks of the work are joined, so other executors would risk
+     * running out of threads.
+     */
+    private ForkJoinPool getParallelPool(long numPairs) {
+        return executor instanceof ForkJoinPool && numPairs >= MIN_PARALLEL_PAIRS ? (ForkJoinPool) executor : null;
+    }
+
+    private Solution optimizeComponent(IndexComponent component, SearchContext context) {
+        if (component.containedContainingIndexPairs.isEmpty()) {
+            return Solution.exact(component.indexes);
         }
-        return mapping;
+        if (coverChains && maxNumPathsPerStep < 0 && beamWidth < 0
+            && ChainCover.isApplicable(component.indexes, indexListSelectionStrategy)) {
+            //equality-only indexes, solved exactly without searching
+            return Solution.exact(ChainCover.optimize(component.indexes, component.containedContainingIndexPairs,
+                                                      indexListSelectionStrategy));
+        }
+        long[] cost = isComparingByCost()
+                ? indexListSelectionStrategy.cost(new DecodedIndexList(component.indexes, context.dictionary))
+                : null;
+        IndexListState indexes = IndexListState.of(component.indexes, cost);
+        PairGraph pairGraph = PairGraph.of(component.containedContainingIndexPairs);
+        int[] pairIds = PairGraph.allIds(component.containedContainingIndexPairs);
+        if (beamWidth > 0) {
+            List<EncodedIndex> optimizedIndexes = new BeamSearch(beamWidth, indexListSelectionStrategy)
+                    .search(indexes, pairGraph, pairIds, context);
+            return Solution.approximate(optimizedIndexes, context.shouldStop());
+        }
+        return optimizeIndexesRecursive(indexes, pairGraph, pairIds, List.of(), context, 0);
+    }
+
+    /**
+     * Optimizes the given indexes and keeps the state of the optimization, so that the index set can be re-optimized
+     * incrementally when indexes are added or removed (see {@link OptimizationSession#update}).
+     */
+    public OptimizationSession openSession(List<Index> indexes) {
+        return new OptimizationSession(this, indexes);
     }
 
-    @NotNull
-    static List<Index> mapIndexes(List<Index> indexes, Map<String, String> mapping) {
-        if (mapping.isEmpty()) {
+    /**
+     * Searches the given (already sanitized and encoded) indexes, with the pairs calculated for them.
+     */
+    List<EncodedIndex> optimizeEncodedIndexes(List<EncodedIndex> indexes,
+                                              List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs,
+                                              FieldDictionary dictionary) {
+        if (containedContainingIndexPairs.isEmpty()) {
             return indexes;
         }
-        List<Index> newIndexes = new ArrayList<>();
-        for (Index index : indexes) {
-            List<IndexFieldSet> newFieldSets = new ArrayList<>();
-            for (IndexFieldSet fieldSet : index.fieldSets) {
-                List<IndexField> indexFields = fieldSet.getFields().stream()
-                        .map(f -> new IndexField(mapping.getOrDefault(f.getName(), f.getName())))
-                        .collect(Collectors.toList());
-                IndexFieldSet newIndexFieldSet = new IndexFieldSet(indexFields);
-                newFieldSets.add(newIndexFieldSet);
+        SearchContext context = newSearchContext(dictionary, executor, null, null);
+        return optimizeIndexes(IndexComponent.of(indexes, containedContainingIndexPairs),
+                               context.forComponent(0, maxForkDepth)).indexes;
+    }
+
+    private SearchContext newSearchContext(FieldDictionary dictionary,
+                                           Executor searchExecutor,
+                                           Duration timeBudget,
+                                           IncumbentPublisher incumbentPublisher) {
+        boolean bounded = prune && indexListSelectionStrategy.cost(List.of()) != null;
+        int searchMaxForkDepth = searchExecutor != null ? maxForkDepth : 0;
+        return new SearchContext(new MemoScope(dictionary, indexListSelectionStrategy, maxNumPathsPerStep),
+                                 searchExecutor, searchMaxForkDepth, bounded, timeBudget, incumbentPublisher);
+    }
+
+    public OptimizationHandle optimizeIndexesAsync(List<Index> indexes) {
+        return optimizeIndexesAsync(indexes, null);
+    }
+
+    /**
+     * Asynchronous variant of {@link #optimizeIndexes(List, Duration)}. Each improvement of the best index list found
+     * so far is published through {@link OptimizationHandle#getSolutions()}, and the search can be stopped early with
+     * {@link OptimizationHandle#cancel()}, in which case the result holds the best list found until then.
+     *
+     * The search runs on the optimizer's {@link ForkJoinPool}, or on the common pool if the optimizer has no pool.
+     */
+    public OptimizationHandle optimizeIndexesAsync(List<Index> indexes, Duration timeBudget) {
+        OptimizationHandle handle = new OptimizationHandle();
+        //other executors are not used, the search could block all of their threads while waiting for its branches
+        Executor driver = executor instanceof ForkJoinPool ? executor : ForkJoinPool.commonPool();
+        driver.execute(() -> {
+            try {
+                handle.complete(optimizeIndexes(indexes, timeBudget, handle));
+            } catch (Throwable e) {
+                handle.fail(e);
             }
-            Index newIndex = new Index(newFieldSets);
-            newIndexes.add(newIndex);
+        });
+        return handle;
+    }
+
+    private Solution optimizeIndexes(IndexComponent component, SearchContext context) {
+        if (context.executor instanceof ForkJoinPool && ForkJoinTask.getPool() != context.executor) {
+            return ((ForkJoinPool) context.executor).invoke(ForkJoinTask.adapt(() -> optimizeComponent(component, context)));
+        }
+        return optimizeComponent(component, context);
+    }
+
+    /**
+     * Applies the configured strategy to the encoded candidates. The strategy sees the candidates as lazily decoded
+     * {@code List<Index>} views, and the chosen view is mapped back to the encoded list it wraps.
+     */
+    private List<EncodedIndex> choseBestIndexSet(List<List<EncodedIndex>> candidates, FieldDictionary dictionary) {
+        return choseBestIndexSet(indexListSelectionStrategy, candidates, dictionary);
+    }
+
+    /**
+     * Shared with {@link BeamSearch}, so both searches pick among their candidates in the same way.
+     */
+    static List<EncodedIndex> choseBestIndexSet(IndexListSelectionStrategy indexListSelectionStrategy,
+                                                List<List<EncodedIndex>> candidates,
+                                                FieldDictionary dictionary) {
+        List<List<Index>> views = new ArrayList<>(candidates.size());
+        for (List<EncodedIndex> candidate : candidates) {
+            views.add(new DecodedIndexList(candidate, dictionary));
+        }
+        List<Index> best = indexListSelectionStrategy.choseBestIndexSet(views);
+        if (best instanceof DecodedIndexList) {
+            return ((DecodedIndexList) best).getEncodedIndexes();
         }
-        return newIndexes;
+        return dictionary.encode(best); // the strategy built a list of its own
+    }
+
+    /**
+     * The candidates are compared by their costs if the strategy ranks them by cost and the costs of the states can be
+     * updated with every merge.
+     */
+    private boolean isComparingByCost() {
+        return compareByCost && indexListSelectionStrategy.isRankedByCost();
     }
 
-    private Map<String, String> reverseMapping(Map<String, String> mapping) {
-        Map<String, String> reverseMapping = new HashMap<>();
-        for (Map.Entry<String, String> entry : mapping.entrySet()) {
-            reverseMapping.put(entry.getValue(), entry.getKey());
+    private long[] getCost(List<EncodedIndex> indexes, FieldDictionary dictionary) {
+        if (indexes instanceof IndexListState && ((IndexListState) indexes).cost != null) {
+            return ((IndexListState) indexes).cost;
         }
-        return reverseMapping;
+        return indexListSelectionStrategy.cost(new DecodedIndexList(indexes, dictionary));
+    }
+
+    /**
+     * Change of the cost of a list by merging the contained index into the containing one, or null if not known. If
+     * the cost only depends on the lengths of the indexes, the change is computed from the encoded indexes, and the
+     * indexes are only decoded for strategies which look at the fields. Shared with {@link BeamSearch}.
+     */
+    static long[] getMergeCostChange(IndexListSelectionStrategy indexListSelectionStrategy,
+                                     EncodedIndex containedIndex,
+                                     EncodedIndex containingIndex,
+                                     EncodedIndex constrainedContainingIndex,
+                                     FieldDictionary dictionary) {
+        long[] containedCost = indexListSelectionStrategy.indexCost(containedIndex.getLength());
+        if (containedCost != null) {
+            long[] containingCost = indexListSelectionStrategy.indexCost(containingIndex.getLength());
+            long[] constrainedCost = indexListSelectionStrategy.indexCost(constrainedContainingIndex.getLength());
+            long[] change = new long[containedCost.length];
+            for (int i = 0; i < change.length; i++) {
+                change[i] = constrainedCost[i] - containingCost[i] - containedCost[i];
+            }
+            return change;
+        }
+        long[] removal = indexListSelectionStrategy.costChange(dictionary.decode(containedIndex), null);
+        long[] replacement = indexListSelectionStrategy.costChange(dictionary.decode(containingIndex),
+                                                                   dictionary.decode(constrainedContainingIndex));
+        if (removal == null || replacement == null) {
+            return null;
+        }
+        long[] change = new long[removal.length];
+        for (int i = 0; i < change.length; i++) {
+            change[i] = removal[i] + replacement[i];
+        }
+        return change;
+    }
+
+    /**
+     * All the candidates the strategy considers equally good, as encoded lists.
+     */
+    private List<List<EncodedIndex>> choseBestIndexSets(List<List<EncodedIndex>> candidates,
+                                                        FieldDictionary dictionary) {
+        List<List<Index>> views = new ArrayList<>(candidates.size());
+        for (List<EncodedIndex> candidate : candidates) {
+            views.add(new DecodedIndexList(candidate, dictionary));
+        }
+        List<List<Index>> bestViews = indexListSelectionStrategy.choseBestIndexSets(views);
+        List<List<EncodedIndex>> best = new ArrayList<>(bestViews.size());
+        for (List<Index> view : bestViews) {
+            best.add(view instanceof DecodedIndexList ? ((DecodedIndexList) view).getEncodedIndexes()
+                                                      : dictionary.encode(view));
+        }
+        return best;
     }
 
     static List<Index> sanitizeIndexes(List<Index> indexes) {
@@ -234,22 +691,18 @@ public class IndexOptimizer {
     }
 
     private static Index removeDuplicateFields(Index index) {
-        Index newIndex = new Index(index.fieldSets);
+        List<IndexFieldSet> newFieldSets = new ArrayList<>(index.fieldSets.size());
         Set<IndexField> fieldsSeenSoFar = new HashSet<>();
-        for (IndexFieldSet fieldSet : newIndex.fieldSets) {
-            Set<IndexField> dupsToRemove = new HashSet<>();
+        for (IndexFieldSet fieldSet : index.fieldSets) {
+            List<IndexField> fields = new ArrayList<>();
             for (IndexField field : fieldSet.getFields()) {
-                if (fieldsSeenSoFar.contains(field)) {
-                    dupsToRemove.add(field);
-                } else {
-                    fieldsSeenSoFar.add(field);
+                if (fieldsSeenSoFar.add(field)) {
+                    fields.add(field);
                 }
             }
-            for (IndexField dup : dupsToRemove) {
-                fieldSet.remove(dup);
-            }
+            newFieldSets.add(new IndexFieldSet(fields));
         }
-        return newIndex;
+        return new Index(newFieldSets);
     }
 
     private static Index removeEmptyFieldSets(Index index) {
@@ -259,223 +712,630 @@ public class IndexOptimizer {
         return new Index(newFieldSets);
     }
 
-    private List<Index> optimizeIndexesRecursive(List<Index> indexes,
-                                                 List<Pair<Index, Index>> containedContainingIndexPairs,
-                                                 int from,
-                                                 int to) {
-        // sorted index list and sorted fields within field sets, so the key string is always the same for memoization
-        String s = indexes.stream().map(Index::toStringSorted).sorted().collect(Collectors.joining(", "));
+    /**
+     * @param indexes indexes of this node, sharing the unchanged indexes with the parent node
+     * @param pairGraph pairs of the search, in the state of this node
+     * @param pairIds ids of the pairs of this node in {@code pairGraph}, in the order of the parent node
+     * @param sleepingPairs pairs which are not merged first in this state, because merging them first leads to states
+     *                      already explored in a sibling branch (see {@link #getBranchSleepingPairs})
+     */
+    private Solution optimizeIndexesRecursive(IndexListState indexes,
+                                              PairGraph pairGraph,
+                                              int[] pairIds,
+                                              List<Pair<EncodedIndex, EncodedIndex>> sleepingPairs,
+                                              SearchContext context,
+                                              int depth) {
+        // the key does not depend on the order of indexes, so the same state reached on different paths is memoized once
+        IndexListKey key = memoize ? IndexListKey.of(indexes) : null;
         if (memoize) {
-            List<Index> optimizedIndexes = optimizedIndexesMemoizer.get(s);
+            List<EncodedIndex> optimizedIndexes = memoStore.get(key, context.memoScope);
             if (optimizedIndexes != null) {
-                return optimizedIndexes;
+                return Solution.exact(optimizedIndexes);
             }
         }
 
-        List<List<Index>> newIndexListCandidates =
-                mergeContainedContainingPairsRecursive(indexes, containedContainingIndexPairs, from, to);
+        if (context.shouldStop()) {
+            return Solution.stopped(indexes);
+        }
+
+        if (context.bounded && indexes.cost != null) {
+            //the state is one of the candidates of its node, so its cost bounds the result of the node
+            context.offerIncumbent(indexes.cost);
+        }
+        long[] cutoff = context.bounded
+                ? getDominatingIncumbentCost(indexes, pairGraph, context)
+                : null;
+        if (cutoff != null) {
+            //no list reachable from here can beat the best one found so far, so the subtree is not explored
+            return Solution.pruned(indexes, cutoff);
+        }
 
         //chose the best according to the chosen strategy, and return it
-        newIndexListCandidates.add(indexes);
-        List<Index> optimizedIndexes = indexListSelectionStrategy.choseBestIndexSet(newIndexListCandidates);
+        BestCandidates candidates = new BestCandidates(context.dictionary);
+        mergeContainedContainingPairsRecursive(indexes, pairGraph, pairIds, sleepingPairs, context, depth, candidates);
+        candidates.offer(indexes);
+        List<EncodedIndex> optimizedIndexes = candidates.getBest();
+        boolean stopped = candidates.stopped;
+        cutoff = candidates.cutoff;
 
-        if (memoize) {
-            optimizedIndexesMemoizer.put(s, optimizedIndexes);
+        if (context.bounded || context.incumbentPublisher != null) {
+            long[] cost = getCost(optimizedIndexes, context.dictionary);
+            if (context.bounded) {
+                context.offerIncumbent(cost);
+            }
+            if (context.incumbentPublisher != null) {
+                context.incumbentPublisher.offer(context.component, optimizedIndexes, cost);
+            }
+            if (cutoff != null && cost != null && SearchContext.compare(cost, cutoff) <= 0) {
+                cutoff = null; // everything cut off in the subtree is worse than the result anyway
+            }
+        }
+        Solution solution = new Solution(optimizedIndexes, cutoff, stopped, false);
+        //a result computed with some better subtrees possibly cut off is only good enough for this run, and a result
+        //computed with sleeping pairs only covers a part of the states reachable from here, so neither is memoized
+        if (memoize && solution.isExact() && sleepingPairs.isEmpty()) {
+            //a state keeps the whole list the search started with, which the weight of the entry does not count
+            List<EncodedIndex> memoizedIndexes = optimizedIndexes instanceof IndexListState
+                                                 ? List.copyOf(optimizedIndexes) : optimizedIndexes;
+            memoStore.put(key, memoizedIndexes, depth, context.memoScope);
         }
 
-        return optimizedIndexes;
+        return solution;
+    }
+
+    /**
+     * Returns the cost of the incumbent if every index list reachable from the given state is worse than it, null
+     * otherwise. An index which is not the contained index of any remaining pair can not be removed anymore, so it is
+     * in every reachable list.
+     */
+    private long[] getDominatingIncumbentCost(List<EncodedIndex> indexes, PairGraph pairGraph, SearchContext context) {
+        List<EncodedIndex> permanentIndexes = new ArrayList<>(indexes.size());
+        for (EncodedIndex index : indexes) {
+            if (!pairGraph.isContainedIndex(index)) {
+                permanentIndexes.add(index);
+            }
+        }
+        long[] lowerBound = indexListSelectionStrategy.costLowerBound(
+                new DecodedIndexList(permanentIndexes, context.dictionary));
+        return lowerBound != null ? context.getDominatingIncumbentCost(lowerBound) : null;
     }
 
-    private List<List<Index>> mergeContainedContainingPairsRecursive(List<Index> indexes,
-                                                                     List<Pair<Index, Index>> containedContainingIndexPairs,
-                                                                     int from,
-                                                                     int to) {
-        List<List<Index>> newIndexListCandidates = new ArrayList<>();
-        sortContainedContainingIndexPair(containedContainingIndexPairs, from, to);
-        to = maxNumPathsPerStep >= 0 ? Math.min(to, from + maxNumPathsPerStep) : to;
+    private void mergeContainedContainingPairsRecursive(
+            IndexListState indexes,
+            PairGraph pairGraph,
+            int[] pairIds,
+            List<Pair<EncodedIndex, EncodedIndex>> sleepingPairs,
+            SearchContext context,
+            int depth,
+            BestCandidates candidates) {
+        int[] sortedPairIds = pairOrderingHeuristic.order(pairGraph, pairIds);
+        List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs = new ArrayList<>(sortedPairIds.length);
+        for (int id : sortedPairIds) {
+            containedContainingIndexPairs.add(pairGraph.get(id));
+        }
+        int to = maxNumPathsPerStep >= 0
+                ? Math.min(containedContainingIndexPairs.size(), maxNumPathsPerStep)
+                : containedContainingIndexPairs.size();
+        List<List<Pair<EncodedIndex, EncodedIndex>>> branchSleepingPairs =
+                getBranchSleepingPairs(containedContainingIndexPairs, to, sleepingPairs);
+
+        if (shouldFork(context, depth, to, containedContainingIndexPairs.size())) {
+            forkBranches(indexes, pairGraph, sortedPairIds, branchSleepingPairs, context, depth, candidates);
+            return;
+        }
 
         //remove one by one from contained indexes and proceed recursively with remaining contained indexes
-        for (int i = from; i < to; i++) {
-            Pair<Index, Index> cc = containedContainingIndexPairs.get(i);
-            Index containedIndex = cc.getLeft();
-            Index containingIndex = cc.getRight();
-
-            List<Index> indexesAfterRemovingOne = removeIndex(containedIndex, indexes);
-            Index constrainedContainingIndex = mergeIndexPair(containedIndex, containingIndex);
-            List<Index> indexesAfterRemovingOneAndConstraining =
-                    replaceContainingWithConstrained(containingIndex, constrainedContainingIndex, indexesAfterRemovingOne);
-            List<Pair<Index, Index>> remainingCcPairs = getRemainingCcPairs(containedContainingIndexPairs,
-                                                                            i,
-                                                                            constrainedContainingIndex);
-            if (! remainingCcPairs.isEmpty()) {
-                List<Index> indexesAfterRecursiveRemoval = optimizeIndexesRecursive(indexesAfterRemovingOneAndConstraining,
-                                                                                    remainingCcPairs,
-                                                                                    0,
-                                                                                    remainingCcPairs.size()
-                );
-                newIndexListCandidates.add(indexesAfterRecursiveRemoval);
-            } else { // recursion bottoms up
-                newIndexListCandidates.add(indexesAfterRemovingOneAndConstraining);
-            }
-        }
-
-        return newIndexListCandidates;
-    }
-
-    private void sortContainedContainingIndexPair(List<Pair<Index, Index>> containedContainingIndexPairs,
-                                                  int from,
-                                                  int to) {
-        HashMap<String, Integer> containedCounts = new HashMap<>();
-        for (Pair<Index, Index> containedContainingIndexPair : containedContainingIndexPairs) {
-            String containing = containedContainingIndexPair.getRight().toStringSorted();
-            Integer containedCount = containedCounts.getOrDefault(containing, 0);
-            containedCounts.put(containing, containedCount + 1);
-        }
-        containedContainingIndexPairs.subList(from, to).sort(Comparator
-                                                                     .comparing(p -> containedCounts.get(((Pair<Index, Index>) p).getRight().toStringSorted()))
-                                                                     .thenComparing(p -> -((Pair<Index, Index>) p).getRight().getLength())
-                                                                     .thenComparing(p -> ((Pair<Index, Index>) p).getLeft().getLength())
-        );
-    }
-
-    private List<Index> removeIndex(Index contained, List<Index> indexes) {
-        List<Index> newList = new ArrayList<>(indexes.size() - 1);
-        for (Index index : indexes) {
-            if (index != contained) {
-                newList.add(index);
-            } // else skip (remove)
-        }
-        return newList;
-    }
-
-    private List<Index> replaceContainingWithConstrained(Index containingIndex, Index constrainedContainingIndex, List<Index> indexes) {
-        List<Index> newList = new ArrayList<>(indexes.size() - 1);
-        for (Index index : indexes) {
-            if (index == containingIndex) {
-                newList.add(constrainedContainingIndex);
-            } else {
-                newList.add(index);
-            }
-        }
-        return newList;
-    }
-
-    private static List<Pair<Index, Index>> getRemainingCcPairs(List<Pair<Index, Index>> containedContainingIndexPairs,
-                                                                int indexOfRemoved,
-                                                                Index constrainedContainingIndex) {
-        Index removed = containedContainingIndexPairs.get(indexOfRemoved).getLeft();
-        Index oldContaining = containedContainingIndexPairs.get(indexOfRemoved).getRight();
-
-        List<Pair<Index, Index>> remainingCcPairs = new ArrayList<>();
-        for (Pair<Index, Index> pair : containedContainingIndexPairs) {
-            Index currContianing = pair.getRight();
-            Index currContained = pair.getLeft();
-            //remove all pairs that has the removed index in contained or containing
-            if (removed == currContianing || removed == currContained) {
+        for (int i = 0; i < to; i++) {
+            if (branchSleepingPairs.get(i) != null) {
+                candidates.offer(mergeContainedContainingPair(
+                        indexes, pairGraph, sortedPairIds, i, branchSleepingPairs.get(i), context, depth));
+            }
+        }
+    }
+
+    /**
+     * Merging two pairs which do not share an index leads to the same state in either order. To explore such a state
+     * only once, the branches are canonicalized with sleep sets: once a branch merging pair {@code p} is explored, the
+     * later sibling branches do not merge {@code p} first, as long as they only merge pairs independent of {@code p}.
+     * Every state stays reachable, so the result of the search does not change.
+     *
+     * This only holds if all branches are explored, so it is not applied when the number of paths per step is limited.
+     *
+     * @return the sleeping pairs of each of the first {@code to} branches, or null for the branches not to explore
+     */
+    private List<List<Pair<EncodedIndex, EncodedIndex>>> getBranchSleepingPairs(
+            List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs,
+            int to,
+            List<Pair<EncodedIndex, EncodedIndex>> sleepingPairs) {
+        List<List<Pair<EncodedIndex, EncodedIndex>>> branchSleepingPairs = new ArrayList<>(to);
+        if (!reduceSymmetries || maxNumPathsPerStep >= 0) {
+            for (int i = 0; i < to; i++) {
+                branchSleepingPairs.add(List.of());
+            }
+            return branchSleepingPairs;
+        }
+
+        List<Pair<EncodedIndex, EncodedIndex>> asleep = new ArrayList<>(sleepingPairs);
+        for (int i = 0; i < to; i++) {
+            Pair<EncodedIndex, EncodedIndex> cc = containedContainingIndexPairs.get(i);
+            if (containsPair(asleep, cc)) {
+                branchSleepingPairs.add(null);
                 continue;
             }
-            if (currContained == oldContaining) {
-                //the contained has additional constraints now, recheck whether it is still contained in the containing
-                if (isContained(constrainedContainingIndex, currContianing)) {
-                    //replace old containing with the new constrained containing
-                    pair = Pair.of(constrainedContainingIndex, currContianing);
-                } else {
-                    continue;
+            List<Pair<EncodedIndex, EncodedIndex>> childSleepingPairs = new ArrayList<>();
+            for (Pair<EncodedIndex, EncodedIndex> sleeping : asleep) {
+                if (areIndependent(sleeping, cc)) {
+                    childSleepingPairs.add(sleeping);
                 }
-            } else if (currContianing == oldContaining) {
-                //the containing has additional constraints, recheck whether it still contains the contained
-                if (isContained(currContained, constrainedContainingIndex)) {
-                    //replace old containing with the new constrained containing
-                    pair = Pair.of(currContained, constrainedContainingIndex);
-                } else {
-                    continue;
+            }
+            branchSleepingPairs.add(childSleepingPairs.isEmpty() ? List.of() : childSleepingPairs);
+            asleep.add(cc);
+        }
+        return branchSleepingPairs;
+    }
+
+    /**
+     * Pairs are independent if they do not share an index. Merging one of them then neither removes nor changes the
+     * other, so the merges commute.
+     */
+    private static boolean areIndependent(Pair<EncodedIndex, EncodedIndex> cc1, Pair<EncodedIndex, EncodedIndex> cc2) {
+        return cc1.getLeft() != cc2.getLeft()
+                && cc1.getLeft() != cc2.getRight()
+                && cc1.getRight() != cc2.getLeft()
+                && cc1.getRight() != cc2.getRight();
+    }
+
+    private static boolean containsPair(List<Pair<EncodedIndex, EncodedIndex>> pairs,
+                                        Pair<EncodedIndex, EncodedIndex> cc) {
+        for (Pair<EncodedIndex, EncodedIndex> pair : pairs) {
+            if (pair == cc) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forks only the upper levels of the search tree, where the subtrees are large enough to outweigh the cost of the
+     * task.
+     */
+    private static boolean shouldFork(SearchContext context, int depth, int numBranches, int numPairs) {
+        return context.executor != null
+                && numBranches > 1
+                && depth < context.maxForkDepth
+                && numPairs >= MIN_FORK_PAIRS;
+    }
+
+    /**
+     * Every branch works on its own copy of the pair graph. The copies are made by the branches themselves, while the
+     * graph of this node is not modified (this node only waits for the branches).
+     */
+    private void forkBranches(IndexListState indexes,
+                              PairGraph pairGraph,
+                              int[] pairIds,
+                              List<List<Pair<EncodedIndex, EncodedIndex>>> branchSleepingPairs,
+                              SearchContext context,
+                              int depth,
+                              BestCandidates candidates) {
+        if (ForkJoinTask.getPool() == context.executor) {
+            //explore the branches as subtasks, idle workers steal them (and their subtasks) from the busy ones
+            List<BranchTask> branches = new ArrayList<>(branchSleepingPairs.size());
+            for (int i = 0; i < branchSleepingPairs.size(); i++) {
+                if (branchSleepingPairs.get(i) != null) {
+                    branches.add(new BranchTask(indexes, pairGraph, pairIds, i, branchSleepingPairs.get(i), context, depth));
                 }
             }
-            remainingCcPairs.add(pair);
+            ForkJoinTask.invokeAll(branches);
+            for (int i = 0; i < branches.size(); i++) {
+                candidates.offer(branches.get(i).join());
+                branches.set(i, null); // a losing result is dropped right away
+            }
+            return;
+        }
+
+        List<CompletableFuture<Solution>> branches = new ArrayList<>(branchSleepingPairs.size());
+        for (int i = 0; i < branchSleepingPairs.size(); i++) {
+            int branch = i;
+            List<Pair<EncodedIndex, EncodedIndex>> sleepingPairs = branchSleepingPairs.get(i);
+            if (sleepingPairs != null) {
+                branches.add(CompletableFuture.supplyAsync(
+                        () -> mergeContainedContainingPair(
+                                indexes, pairGraph.copy(), pairIds, branch, sleepingPairs, context, depth),
+                        context.executor));
+            }
+        }
+        for (int i = 0; i < branches.size(); i++) {
+            candidates.offer(join(branches.get(i)));
+            branches.set(i, null);
         }
-        return remainingCcPairs;
     }
 
-    private static List<Pair<Index, Index>> calculateContainedContainingIndexPairs(List<Index> indexes) {
-        List<Pair<Index, Index>> pairs = new ArrayList<>();
-        for (int i = 0; i < indexes.size(); i++) {
-            Index containingIndex = indexes.get(i);
-            for (int j = 0; j < indexes.size(); j++) {
-                Index containedIndex = indexes.get(j);
-                if (i != j
-                        && containingIndex.getLength() >= containedIndex.getLength()
-                        && isContained(containedIndex, containingIndex)) {
-                    pairs.add(Pair.of(containedIndex, containingIndex));
+    private static List<Solution> joinAll(List<CompletableFuture<Solution>> futures) {
+        List<Solution> solutions = new ArrayList<>(futures.size());
+        for (CompletableFuture<Solution> future : futures) {
+            solutions.add(join(future));
+        }
+        return solutions;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Merges pair {@code pairIds[i]} and searches the resulting state. The merge is undone afterwards, so the pair
+     * graph is in the state of this node again when this returns.
+     */
+    private Solution mergeContainedContainingPair(
+            IndexListState indexes,
+            PairGraph pairGraph,
+            int[] pairIds,
+            int i,
+            List<Pair<EncodedIndex, EncodedIndex>> sleepingPairs,
+            SearchContext context,
+            int depth) {
+        Pair<EncodedIndex, EncodedIndex> cc = pairGraph.get(pairIds[i]);
+        EncodedIndex containedIndex = cc.getLeft();
+        EncodedIndex containingIndex = cc.getRight();
+
+        EncodedIndex constrainedContainingIndex = mergeIndexPair(containedIndex, containingIndex);
+        //shares the unchanged indexes with this state instead of copying them
+        long[] costChange = indexes.cost != null
+                ? getMergeCostChange(indexListSelectionStrategy, containedIndex, containingIndex,
+                                     constrainedContainingIndex, context.dictionary)
+                : null;
+        IndexListState indexesAfterRemovingOneAndConstraining =
+                indexes.merge(containedIndex, containingIndex, constrainedContainingIndex, costChange);
+        int mark = pairGraph.merge(pairIds[i], constrainedContainingIndex, getParallelPool(pairIds.length));
+        try {
+            int[] remainingPairIds = pairGraph.filter(pairIds);
+            if (remainingPairIds.length == 0) { // recursion bottoms up
+                return Solution.exact(indexesAfterRemovingOneAndConstraining);
+            }
+            return optimizeIndexesRecursive(indexesAfterRemovingOneAndConstraining, pairGraph, remainingPairIds,
+                                            sleepingPairs, context, depth + 1);
+        } finally {
+            pairGraph.undo(mark);
+        }
+    }
+
+    /**
+     * Running choice among the candidates of a node. If the strategy allows it (see
+     * {@link IndexListSelectionStrategy#isChoiceIncremental()}), each candidate is compared with the best ones so far
+     * as soon as it is known, and dropped if it loses, so a node keeps O(1) index lists instead of the results of all
+     * its branches. Otherwise all the candidates are kept, and the strategy is given all of them at once at the end.
+     *
+     * With a strategy ranking by cost, the first candidate with the lowest cost is kept. Other incremental strategies
+     * may choose among equally good candidates in their own way, so all the ties are kept and the strategy chooses
+     * among them at the end.
+     */
+    private final class BestCandidates {
+
+        private final FieldDictionary dictionary;
+        private final boolean byCost;
+        private final boolean incremental;
+        private List<List<EncodedIndex>> best = new ArrayList<>(); // ties or all candidates, in the order offered
+        private long[] bestCost;
+        long[] cutoff; // lowest cutoff of the offered solutions
+        boolean stopped;
+
+        BestCandidates(FieldDictionary dictionary) {
+            this.dictionary = dictionary;
+            this.byCost = isComparingByCost();
+            this.incremental = indexListSelectionStrategy.isChoiceIncremental();
+        }
+
+        void offer(Solution solution) {
+            stopped |= solution.stopped;
+            if (solution.cutoff != null && (cutoff == null || SearchContext.compare(solution.cutoff, cutoff) < 0)) {
+                cutoff = solution.cutoff;
+            }
+            offer(solution.indexes);
+        }
+
+        void offer(List<EncodedIndex> candidate) {
+            if (byCost) {
+                long[] cost = getCost(candidate, dictionary);
+                if (bestCost == null || SearchContext.compare(cost, bestCost) < 0) {
+                    best = List.of(candidate);
+                    bestCost = cost;
                 }
+                return;
+            }
+            best.add(candidate);
+            if (incremental) {
+                best = choseBestIndexSets(best, dictionary);
             }
         }
-        return pairs;
+
+        List<EncodedIndex> getBest() {
+            return best.size() == 1 ? best.get(0) : choseBestIndexSet(best, dictionary);
+        }
     }
 
-    static boolean isContained(Index containedIndex, Index containingIndex) {
-        List<IndexFieldSet> prefix = findLongestCommonPrefix(containingIndex, containedIndex);
-        return new Index(prefix).getLength() == containedIndex.getLength();
+    private final class BranchTask extends RecursiveTask<Solution> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IndexListState indexes;
+        private final PairGraph pairGraph;
+        private final int[] pairIds;
+        private final int i;
+        private final List<Pair<EncodedIndex, EncodedIndex>> sleepingPairs;
+        private final SearchContext context;
+        private final int depth;
+
+        BranchTask(IndexListState indexes,
+                   PairGraph pairGraph,
+                   int[] pairIds,
+                   int i,
+                   List<Pair<EncodedIndex, EncodedIndex>> sleepingPairs,
+                   SearchContext context,
+                   int depth) {
+            this.indexes = indexes;
+            this.pairGraph = pairGraph;
+            this.pairIds = pairIds;
+            this.i = i;
+            this.sleepingPairs = sleepingPairs;
+            this.context = context;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Solution compute() {
+            return mergeContainedContainingPair(indexes, pairGraph.copy(), pairIds, i, sleepingPairs, context, depth);
+        }
     }
 
-    public static List<IndexFieldSet> findLongestCommonPrefix(Index input1, Index input2) {
-        if (input1.getLength() == 0 || input2.getLength() == 0) {
-            return emptyList();
+    /**
+     * Result of a sub-problem. If some of its subtrees were pruned and the result is not known to be better than all
+     * of them, {@code cutoff} holds the lowest incumbent cost they were pruned against. If the search was stopped
+     * (timed out or cancelled) while exploring it, {@code stopped} is set. The result is exact if neither happened, and
+     * it does not come from a heuristic search.
+     */
+    private static final class Solution {
+
+        final List<EncodedIndex> indexes;
+        final long[] cutoff;
+        final boolean stopped;
+        final boolean approximate;
+
+        private Solution(List<EncodedIndex> indexes, long[] cutoff, boolean stopped, boolean approximate) {
+            this.indexes = indexes;
+            this.cutoff = cutoff;
+            this.stopped = stopped;
+            this.approximate = approximate;
+        }
+
+        static Solution exact(List<EncodedIndex> indexes) {
+            return new Solution(indexes, null, false, false);
+        }
+
+        static Solution pruned(List<EncodedIndex> indexes, long[] cutoff) {
+            return new Solution(indexes, cutoff, false, false);
+        }
+
+        static Solution stopped(List<EncodedIndex> indexes) {
+            return new Solution(indexes, null, true, false);
+        }
+
+        /**
+         * Result of a heuristic search, which is never memoized or reported as optimal.
+         */
+        static Solution approximate(List<EncodedIndex> indexes, boolean stopped) {
+            return new Solution(indexes, null, stopped, true);
+        }
+
+        boolean isExact() {
+            return cutoff == null && !stopped && !approximate;
         }
+    }
+
 
-        //copy indexes so we can modify them
-        Index index1 = input1.copy();
-        Index index2 = input2.copy();
+    static List<Pair<EncodedIndex, EncodedIndex>> calculateContainedContainingIndexPairs(List<EncodedIndex> indexes) {
+        return calculateContainedContainingIndexPairs(indexes, null);
+    }
 
-        //discard empty field sets
-        for (Index index : List.of(index1, index2)) {
-            if (index.getFieldSets().get(0).getLength() == 0) {
-                index.removeFieldSet(index.getFieldSets().get(0));
-                return findLongestCommonPrefix(index1, index2);
+    /**
+     * Pairs of all the indexes, ordered by the containing and then by the contained index. Only the candidates found
+     * with {@link FieldPostings} are checked for containment.
+     *
+     * @param pool pool to check the candidates on in parallel, or null to check them in the calling thread
+     */
+    static List<Pair<EncodedIndex, EncodedIndex>> calculateContainedContainingIndexPairs(List<EncodedIndex> indexes,
+                                                                                       ForkJoinPool pool) {
+        FieldPostings postings = FieldPostings.of(indexes); // slots are the positions in the list
+        int[][] containingPositions = new int[indexes.size()][];
+        IntConsumer findContaining = j -> {
+            EncodedIndex containedIndex = indexes.get(j);
+            BitSet candidates = postings.getContainingCandidates(containedIndex);
+            candidates.clear(j);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                EncodedIndex containingIndex = indexes.get(i);
+                if (containingIndex.getLength() < containedIndex.getLength()
+                        || !isContained(containedIndex, containingIndex)) {
+                    candidates.clear(i);
+                }
+            }
+            containingPositions[j] = candidates.stream().toArray();
+        };
+        if (pool != null) {
+            ParallelRange.forEach(pool, indexes.size(), findContaining);
+        } else {
+            for (int j = 0; j < indexes.size(); j++) {
+                findContaining.accept(j);
             }
         }
 
-        //remove common fields from both field sets
-        IndexFieldSet fs1 = index1.getFieldSets().get(0);
-        IndexFieldSet fs2 = index2.getFieldSets().get(0);
-        List<IndexField> commonFields = findCommonFields(fs1, fs2);
-        if (commonFields.isEmpty()) {
-            return emptyList(); //no prefix possible as there are no common fields in the first FS of each index
+        List<List<EncodedIndex>> containedIndexes = new ArrayList<>(indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            containedIndexes.add(new ArrayList<>());
         }
-        commonFields.forEach(fs1::remove);
-        commonFields.forEach(fs2::remove);
+        int numPairs = 0;
+        for (int j = 0; j < indexes.size(); j++) {
+            for (int i : containingPositions[j]) {
+                containedIndexes.get(i).add(indexes.get(j));
+                numPairs++;
+            }
+        }
+        List<Pair<EncodedIndex, EncodedIndex>> pairs = new ArrayList<>(numPairs);
+        for (int i = 0; i < indexes.size(); i++) {
+            for (EncodedIndex containedIndex : containedIndexes.get(i)) {
+                pairs.add(Pair.of(containedIndex, indexes.get(i)));
+            }
+        }
+        return pairs;
+    }
 
-        //build prefix (field set with common fields + longest common prefix for remaining fields)
-        ArrayList<IndexFieldSet> result = new ArrayList<>();
-        result.add(new IndexFieldSet(commonFields));
-        result.addAll(findLongestCommonPrefix(index1, index2));
+    static boolean isContained(Index containedIndex, Index containingIndex) {
+        FieldDictionary dictionary = FieldDictionary.of(List.of(containedIndex, containingIndex));
+        return isContained(EncodedIndex.encode(containedIndex, dictionary),
+                           EncodedIndex.encode(containingIndex, dictionary));
+    }
+
+    static boolean isContained(EncodedIndex containedIndex, EncodedIndex containingIndex) {
+        if (containedIndex.hasRepeatedFields() || containingIndex.hasRepeatedFields()) {
+            List<int[]> prefix = findLongestCommonPrefixWithRepeatedFields(containingIndex, containedIndex);
+            return prefix.stream().mapToInt(fieldSet -> fieldSet.length).sum() == containedIndex.getLength();
+        }
+        return walkCommonPrefix(containingIndex, containedIndex, null) == containedIndex.getLength();
+    }
+
+    public static List<IndexFieldSet> findLongestCommonPrefix(Index input1, Index input2) {
+        FieldDictionary dictionary = FieldDictionary.of(List.of(input1, input2));
+        List<int[]> prefix = findLongestCommonPrefix(EncodedIndex.encode(input1, dictionary),
+                                                     EncodedIndex.encode(input2, dictionary));
+        List<IndexFieldSet> result = new ArrayList<>(prefix.size());
+        for (int[] fieldSet : prefix) {
+            result.add(new IndexFieldSet(Arrays.stream(fieldSet)
+                                                 .mapToObj(id -> new IndexField(dictionary.nameOf(id)))
+                                                 .collect(Collectors.toList())));
+        }
         return result;
     }
 
-    private static List<IndexField> findCommonFields(IndexFieldSet set1, IndexFieldSet set2) {
-        return set1.getFields().stream()
-                .filter(field -> set2.getFields().contains(field))
-                .collect(toList());
+    static List<int[]> findLongestCommonPrefix(EncodedIndex input1, EncodedIndex input2) {
+        if (input1.hasRepeatedFields() || input2.hasRepeatedFields()) {
+            return findLongestCommonPrefixWithRepeatedFields(input1, input2);
+        }
+        List<int[]> prefix = new ArrayList<>();
+        walkCommonPrefix(input1, input2, prefix);
+        return prefix;
+    }
+
+    /**
+     * Walks the field sets of both indexes with one cursor per index and returns the length of their longest common
+     * prefix. If {@code prefix} is not null, the field sets of the prefix are added to it; otherwise nothing is
+     * allocated.
+     *
+     * In each step the current field sets of both indexes are intersected and the common fields are consumed from
+     * both. Because no field occurs twice in one index, the fields consumed earlier from the current field set of one
+     * index can never be in the current field set of the other one, so the intersection of the remainders is simply
+     * the intersection of the original field sets, and only the number of remaining fields has to be tracked. The
+     * prefix ends when the remainders have no common fields, which is always the case when both remainders are
+     * non-empty after a step.
+     */
+    private static int walkCommonPrefix(EncodedIndex index1, EncodedIndex index2, List<int[]> prefix) {
+        int length = 0;
+        int i = -1;
+        int j = -1;
+        int remaining1 = 0;
+        int remaining2 = 0;
+        while (true) {
+            //move to the next field set when the current one is used up (skipping empty field sets)
+            while (remaining1 == 0) {
+                if (++i == index1.getNumFieldSets()) {
+                    return length;
+                }
+                remaining1 = index1.getFieldSetLength(i);
+            }
+            while (remaining2 == 0) {
+                if (++j == index2.getNumFieldSets()) {
+                    return length;
+                }
+                remaining2 = index2.getFieldSetLength(j);
+            }
+
+            int common = index1.intersectionSize(i, index2, j);
+            if (common == 0) {
+                return length; //no longer prefix possible as there are no common fields in the current FS of each index
+            }
+            if (prefix != null) {
+                prefix.add(index1.intersection(i, index2, j));
+            }
+            length += common;
+            remaining1 -= common;
+            remaining2 -= common;
+            if (remaining1 > 0 && remaining2 > 0) {
+                return length; //the remainders have no common fields left
+            }
+        }
+    }
+
+    /**
+     * Longest common prefix computed on copies of the field sets, used if a field occurs in more than one field set
+     * of an index, where {@link #walkCommonPrefix} does not apply.
+     */
+    private static List<int[]> findLongestCommonPrefixWithRepeatedFields(EncodedIndex input1, EncodedIndex input2) {
+        //copy field sets so we can modify them
+        List<BitSet> fieldSets1 = input1.getFieldSets();
+        List<BitSet> fieldSets2 = input2.getFieldSets();
+
+        List<int[]> prefix = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < fieldSets1.size() && j < fieldSets2.size()) {
+            BitSet fs1 = fieldSets1.get(i);
+            BitSet fs2 = fieldSets2.get(j);
+
+            //discard empty field sets
+            if (fs1.isEmpty()) {
+                i++;
+                continue;
+            }
+            if (fs2.isEmpty()) {
+                j++;
+                continue;
+            }
+
+            //remove common fields from both field sets
+            BitSet commonFields = (BitSet) fs1.clone();
+            commonFields.and(fs2);
+            if (commonFields.isEmpty()) {
+                break; //no longer prefix possible as there are no common fields in the current FS of each index
+            }
+            fs1.andNot(commonFields);
+            fs2.andNot(commonFields);
+
+            //extend prefix with the field set of common fields
+            prefix.add(commonFields.stream().toArray());
+        }
+        return prefix;
     }
 
-    private Index mergeIndexPair(Index contained, Index containing) {
-        contained = contained.copy();
-        containing = containing.copy();
-        List<IndexFieldSet> prefix = findLongestCommonPrefix(contained, containing);
-        Index constrainedIndex = new Index(prefix);
-        Set<IndexField> prefixFields = new HashSet<>(constrainedIndex.getFields());
+    static EncodedIndex mergeIndexPair(EncodedIndex contained, EncodedIndex containing) {
+        List<int[]> constrainedFieldSets = findLongestCommonPrefix(contained, containing);
+        BitSet prefixFields = new BitSet();
+        constrainedFieldSets.forEach(fieldSet -> Arrays.stream(fieldSet).forEach(prefixFields::set));
 
         //add remaining fields (and field sets) that are not present in the prefix
-        for (IndexFieldSet fs : containing.getFieldSets()) {
-            IndexFieldSet indexFieldSet = new IndexFieldSet();
-            fs.getFields().stream()
-                    .filter(f -> !prefixFields.contains(f))
-                    .forEach(indexFieldSet::add);
-            if (!indexFieldSet.getFields().isEmpty()) {
-                constrainedIndex.addFieldSet(indexFieldSet);
+        for (int k = 0; k < containing.getNumFieldSets(); k++) {
+            int[] fieldSet = Arrays.stream(containing.getFieldIds(k))
+                    .filter(id -> !prefixFields.get(id))
+                    .toArray();
+            if (fieldSet.length > 0) {
+                constrainedFieldSets.add(fieldSet);
             }
         }
 
-        return constrainedIndex;
+        return EncodedIndex.of(constrainedFieldSets, containing);
     }
 
 }
@@ -1,13 +1,15 @@
 package indexoptimization;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class IndexParser {
     public static Index parseIndex(String s) {
-        Index index = new Index();
+        List<IndexFieldSet> fieldSets = new ArrayList<>();
         int i = 0;
         i += accept(s, i, '{');
         while (i < s.length() && s.charAt(i) == '{') {
-            IndexFieldSet fieldSet = new IndexFieldSet();
-            index.fieldSets.add(fieldSet);
+            List<IndexField> fieldSet = new ArrayList<>();
             i += accept(s, i, '{');
             String fieldSetSubstring = s.substring(i, s.indexOf('}', i));
             String[] fields = fieldSetSubstring.split(",");
@@ -16,11 +18,12 @@ public class IndexParser {
                     fieldSet.add(new IndexField(field));
                 }
             }
+            fieldSets.add(new IndexFieldSet(fieldSet));
             i += fieldSetSubstring.length();
             i += accept(s, i, '}');
         }
         accept(s, i, '}');
-        return index;
+        return new Index(fieldSets);
     }
 
     private static int accept(String s, int i, char c) {
@@ -0,0 +1,48 @@
+package indexoptimization;
+
+/**
+ * What a memoized sub-problem depends on besides its indexes: the dictionary the field ids refer to, the strategy which
+ * chose the list, and the number of paths per step the search was limited to. A memo store only returns an entry to a
+ * search of a compatible scope, so a store can be shared by optimizers of different configurations.
+ */
+final class MemoScope {
+
+    final FieldDictionary dictionary;
+    private final IndexListSelectionStrategy strategy;
+    private final int maxNumPathsPerStep;
+    private final String fingerprint; // null if the strategy has none
+
+    MemoScope(FieldDictionary dictionary, IndexListSelectionStrategy strategy, int maxNumPathsPerStep) {
+        this.dictionary = dictionary;
+        this.strategy = strategy;
+        this.maxNumPathsPerStep = maxNumPathsPerStep;
+        String strategyFingerprint = strategy.getFingerprint();
+        this.fingerprint = strategyFingerprint != null
+                ? strategyFingerprint + ";maxNumPathsPerStep=" + maxNumPathsPerStep
+                : null;
+    }
+
+    /**
+     * True if an entry memoized in the other scope is valid in this one: the ids the dictionaries share name the same
+     * fields, and the search was configured the same.
+     */
+    boolean isCompatibleWith(MemoScope other) {
+        return other == this || (hasSameConfiguration(other) && dictionary.isCompatibleWith(other.dictionary));
+    }
+
+    /**
+     * Strategies are the same if they are the same object, or if they have the same fingerprint.
+     */
+    private boolean hasSameConfiguration(MemoScope other) {
+        return maxNumPathsPerStep == other.maxNumPathsPerStep
+                && (strategy == other.strategy || (fingerprint != null && fingerprint.equals(other.fingerprint)));
+    }
+
+    /**
+     * Identifies the configuration of the search across processes, null if the strategy has no fingerprint.
+     */
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+}
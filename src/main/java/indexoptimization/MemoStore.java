@@ -0,0 +1,125 @@
+package indexoptimization;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Storage of the optimized sub-problems memoized by the {@link IndexOptimizer}. A sub-problem is identified by the
+ * (canonically ordered) set of indexes of a search state, and maps to the best index set found for that state.
+ *
+ * An entry is only returned to a search of a compatible {@link MemoScope}: the same field names for the field ids, the
+ * same selection strategy and the same limit of paths per step. So a store can be shared by multiple optimizers, also
+ * of different configurations.
+ *
+ * The default store is unbounded and lives as long as the optimizer. A bounded store keeps at most a given number
+ * of entries and/or an estimated number of bytes, evicting entries according to an {@link EvictionPolicy}.
+ */
+public abstract class MemoStore implements AutoCloseable {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    MemoStore() {
+    }
+
+    public static MemoStore unbounded() {
+        return new UnboundedMemoStore();
+    }
+
+    /**
+     * @param maxEntries maximum number of entries, or -1 for no limit
+     * @param maxWeight  maximum estimated number of bytes retained by the entries, or -1 for no limit
+     * @param policy     policy used to select the entries to evict
+     */
+    public static MemoStore bounded(long maxEntries, long maxWeight, EvictionPolicy policy) {
+        if (maxEntries < 0 && maxWeight < 0) {
+            throw new IllegalArgumentException("at least one of maxEntries and maxWeight has to be set");
+        }
+        return new BoundedMemoStore(maxEntries, maxWeight, policy);
+    }
+
+    /**
+     * Keeps the memoized sub-problems in a file, so that they can be reused by later runs (also of other processes),
+     * and the {@code inMemory} store in front of it. The file is locked while the store is open, so it is used by one
+     * store at a time, and it only keeps the sub-problems of one configuration of the search. See
+     * {@link PersistentMemoStore} for the file format.
+     *
+     * @throws IOException if the file can not be opened, is not a memo file, or is in use by another store
+     */
+    public static MemoStore persistent(Path file, MemoStore inMemory) throws IOException {
+        return new PersistentMemoStore(file, inMemory);
+    }
+
+    public static MemoStore persistent(Path file) throws IOException {
+        return persistent(file, unbounded());
+    }
+
+    /**
+     * @param scope scope of the current search, whose dictionary the field ids of the key refer to
+     */
+    List<EncodedIndex> get(IndexListKey key, MemoScope scope) {
+        List<EncodedIndex> indexes = lookup(key, scope);
+        (indexes != null ? hitCount : missCount).increment();
+        return indexes;
+    }
+
+    /**
+     * @param depth recursion depth at which the sub-problem was solved (0 for the input index set)
+     * @param scope scope of the current search, whose dictionary the field ids of the key and indexes refer to
+     */
+    abstract void put(IndexListKey key, List<EncodedIndex> indexes, int depth, MemoScope scope);
+
+    abstract List<EncodedIndex> lookup(IndexListKey key, MemoScope scope);
+
+    public abstract void clear();
+
+    /**
+     * Releases the resources held by the store (e.g. the file of a persistent store). In-memory stores do not need
+     * to be closed.
+     */
+    @Override
+    public void close() {
+    }
+
+    abstract long entryCount();
+
+    abstract long weight();
+
+    public MemoStatistics getStatistics() {
+        return new MemoStatistics(hitCount.sum(), missCount.sum(), evictionCount(), entryCount(), weight());
+    }
+
+    long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    void recordEviction() {
+        evictionCount.increment();
+    }
+
+    /**
+     * Estimated number of bytes retained by an entry: the key with its indexes, and the memoized list with the
+     * indexes that are not already part of the key.
+     */
+    static long estimateWeight(IndexListKey key, List<EncodedIndex> indexes) {
+        Map<EncodedIndex, Boolean> counted = new IdentityHashMap<>();
+        long weight = 32 + 16 + 4L * key.size() + 24 + 16 + 4L * indexes.size();
+        for (EncodedIndex index : key.getIndexes()) {
+            if (counted.put(index, Boolean.TRUE) == null) {
+                weight += index.estimateSizeInBytes();
+            }
+        }
+        for (EncodedIndex index : indexes) {
+            if (counted.put(index, Boolean.TRUE) == null) {
+                weight += index.estimateSizeInBytes();
+            }
+        }
+        return weight;
+    }
+
+}
@@ -10,7 +10,7 @@ public class MinSumOfSquaresIndexListSelectionStrategy implements IndexListSelec
         int minSumOfSquares = -1;
         List<List<Index>> bestIndexSetList = null;
         for (List<Index> indexes : indexCandidates) {
-            int sumOfSquares = indexes.stream().mapToInt(Index::getLength).map(len -> len * len).sum();
+            int sumOfSquares = sumOfSquares(indexes);
             if (minSumOfSquares == -1 || sumOfSquares < minSumOfSquares) {
                 bestIndexSetList = new ArrayList<>();
                 bestIndexSetList.add(indexes);
@@ -22,4 +22,44 @@ public class MinSumOfSquaresIndexListSelectionStrategy implements IndexListSelec
         }
         return bestIndexSetList;
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean isSeparable() {
+        return true;
+    }
+
+    @Override
+    public boolean isMonotone() {
+        return true;
+    }
+
+    @Override
+    public boolean isRankedByCost() {
+        return true;
+    }
+
+    @Override
+    public long[] cost(List<Index> indexes) {
+        return new long[]{sumOfSquares(indexes)};
+    }
+
+    @Override
+    public long[] indexCost(int length) {
+        return new long[]{(long) length * length};
+    }
+
+    @Override
+    public long[] costLowerBound(List<Index> permanentIndexes) {
+        //reordering fields does not change the length of an index, and more indexes only add to the sum
+        return cost(permanentIndexes);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return "minSumOfSquares";
+    }
+
+    private static int sumOfSquares(List<Index> indexes) {
+        return indexes.stream().mapToInt(Index::getLength).map(len -> len * len).sum();
+    }
+}
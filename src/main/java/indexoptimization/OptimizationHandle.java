@@ -0,0 +1,78 @@
+package indexoptimization;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Handle of an asynchronous optimization started with {@link IndexOptimizer#optimizeIndexesAsync(List)}.
+ */
+public final class OptimizationHandle {
+
+    private final SubmissionPublisher<List<Index>> solutions = new SubmissionPublisher<>();
+    private final CompletableFuture<OptimizationResult> result = new CompletableFuture<>();
+    private volatile SearchContext context;
+    private volatile boolean cancelled;
+
+    OptimizationHandle() {
+        //cancelling the future stops the search as well
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                cancel();
+            }
+        });
+    }
+
+    /**
+     * Publishes every index list that improves on the previously published one. Completes when the search is
+     * finished. Subscribers which do not keep up miss some of the intermediate lists.
+     */
+    public Flow.Publisher<List<Index>> getSolutions() {
+        return solutions;
+    }
+
+    /**
+     * Completes with the final result when the search is finished, stopped by the time budget, or cancelled.
+     */
+    public CompletableFuture<OptimizationResult> getResult() {
+        return result;
+    }
+
+    /**
+     * Stops the search. The result then holds the best index list found so far.
+     */
+    public void cancel() {
+        cancelled = true;
+        SearchContext searchContext = context;
+        if (searchContext != null) {
+            searchContext.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    SubmissionPublisher<List<Index>> getPublisher() {
+        return solutions;
+    }
+
+    void attach(SearchContext searchContext) {
+        context = searchContext;
+        if (cancelled) {
+            searchContext.cancel();
+        }
+    }
+
+    void complete(OptimizationResult optimizationResult) {
+        solutions.close();
+        result.complete(optimizationResult);
+    }
+
+    void fail(Throwable e) {
+        solutions.closeExceptionally(e);
+        result.completeExceptionally(e);
+    }
+
+}
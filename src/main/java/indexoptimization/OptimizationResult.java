@@ -0,0 +1,63 @@
+package indexoptimization;
+
+import java.util.List;
+
+/**
+ * Result of a time-budgeted or asynchronous optimization (see
+ * {@link IndexOptimizer#optimizeIndexes(List, java.time.Duration)} and
+ * {@link IndexOptimizer#optimizeIndexesAsync(List)}).
+ */
+public final class OptimizationResult {
+
+    private final List<Index> indexes;
+    private final boolean provenOptimal;
+    private final boolean timedOut;
+    private final boolean cancelled;
+
+    OptimizationResult(List<Index> indexes, boolean provenOptimal, boolean timedOut, boolean cancelled) {
+        this.indexes = indexes;
+        this.provenOptimal = provenOptimal;
+        this.timedOut = timedOut;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * The best index list found.
+     */
+    public List<Index> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * True if the whole search space was covered (explored or pruned), so no better index list exists according to
+     * the strategy. Never true for an optimizer limiting the number of paths per step.
+     */
+    public boolean isProvenOptimal() {
+        return provenOptimal;
+    }
+
+    /**
+     * True if the time budget ran out before the search was finished.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * True if the search was cancelled (see {@link OptimizationHandle#cancel()}) before it was finished.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String toString() {
+        return "OptimizationResult{" +
+                "indexes=" + indexes +
+                ", provenOptimal=" + provenOptimal +
+                ", timedOut=" + timedOut +
+                ", cancelled=" + cancelled +
+                '}';
+    }
+
+}
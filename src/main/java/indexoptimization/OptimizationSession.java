@@ -0,0 +1,91 @@
+package indexoptimization;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the state of an optimization (the input indexes, their contained-containing pairs and the optimized groups of
+ * indexes), so that the index set can be re-optimized cheaply after a few indexes are added or removed. Only the pairs
+ * of the changed indexes are recalculated, and only the groups of indexes connected with them are searched again.
+ *
+ * If the strategy is not separable (see {@link IndexListSelectionStrategy#isSeparable()}), all indexes are searched
+ * together, still reusing the pairs and the memoized sub-problems. Sessions are not thread-safe.
+ */
+public final class OptimizationSession {
+
+    private final IndexOptimizer optimizer;
+    private final FieldDictionary dictionary = new FieldDictionary();
+    private final ContainmentGraph graph = new ContainmentGraph();
+    private Map<IndexListKey, List<EncodedIndex>> optimizedComponents = new HashMap<>();
+    private List<EncodedIndex> optimizedIndexes = List.of();
+    @VisibleForTesting int lastNumSearchedComponents;
+
+    OptimizationSession(IndexOptimizer optimizer, List<Index> indexes) {
+        this.optimizer = optimizer;
+        update(indexes, List.of());
+    }
+
+    /**
+     * Adds and removes the given indexes and re-optimizes the index set.
+     *
+     * @return the optimized index set
+     * @throws IllegalArgumentException if an index to be removed is not in the session
+     */
+    public List<Index> update(Collection<Index> addedIndexes, Collection<Index> removedIndexes) {
+        List<EncodedIndex> removed = new ArrayList<>();
+        for (Index index : IndexOptimizer.sanitizeIndexes(new ArrayList<>(removedIndexes))) {
+            EncodedIndex encoded = EncodedIndex.encode(index, dictionary);
+            EncodedIndex existing = graph.getIndexes().stream()
+                    .filter(i -> i.equals(encoded) && removed.stream().noneMatch(r -> r == i))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Index not in the session: " + index));
+            removed.add(existing);
+        }
+        removed.forEach(graph::remove);
+        for (Index index : IndexOptimizer.sanitizeIndexes(new ArrayList<>(addedIndexes))) {
+            graph.add(EncodedIndex.encode(index, dictionary));
+        }
+
+        List<List<EncodedIndex>> components = optimizer.indexListSelectionStrategy.isSeparable()
+                ? graph.getComponents()
+                : List.of(new ArrayList<>(graph.getIndexes()));
+        Map<IndexListKey, List<EncodedIndex>> newOptimizedComponents = new HashMap<>();
+        List<EncodedIndex> newOptimizedIndexes = new ArrayList<>();
+        int numSearchedComponents = 0;
+        for (List<EncodedIndex> component : components) {
+            IndexListKey key = IndexListKey.of(component);
+            List<EncodedIndex> optimizedComponent = optimizedComponents.get(key);
+            if (optimizedComponent == null) {
+                List<Pair<EncodedIndex, EncodedIndex>> pairs = graph.getPairs(component);
+                optimizedComponent = pairs.isEmpty()
+                        ? component
+                        : optimizer.optimizeEncodedIndexes(component, pairs, dictionary);
+                numSearchedComponents += pairs.isEmpty() ? 0 : 1;
+            }
+            newOptimizedComponents.put(key, optimizedComponent);
+            newOptimizedIndexes.addAll(optimizedComponent);
+        }
+        optimizedComponents = newOptimizedComponents;
+        optimizedIndexes = newOptimizedIndexes;
+        lastNumSearchedComponents = numSearchedComponents;
+        return getOptimizedIndexes();
+    }
+
+    /**
+     * The (sanitized) input indexes of the session.
+     */
+    public List<Index> getIndexes() {
+        return dictionary.decode(graph.getIndexes());
+    }
+
+    public List<Index> getOptimizedIndexes() {
+        return dictionary.decode(optimizedIndexes);
+    }
+
+}
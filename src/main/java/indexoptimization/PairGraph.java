@@ -0,0 +1,282 @@
+package indexoptimization;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Contained-containing pairs of a search, held as edges indexed by their contained and by their containing index, so
+ * that merging a pair only touches the edges incident to the two merged indexes instead of rescanning all pairs.
+ *
+ * Every edge has a fixed id. Merging removes edges and replaces the containing or contained index of others in place,
+ * keeping their ids, so a list of ids filtered with {@link #filter(int[])} stays in the same order as before the
+ * merge. Merges are recorded in a trail and are undone with {@link #undo(int)} when the search backtracks. The graph is
+ * not thread-safe: a branch explored by another thread works on a {@link #copy()}.
+ *
+ * The adjacency lists are only appended to. An entry is stale when its edge was removed or its index was replaced,
+ * which is checked when the list is read.
+ */
+final class PairGraph {
+
+    private final Pair<EncodedIndex, EncodedIndex>[] edges; // by id, null if removed
+    private final Map<EncodedIndex, EdgeIds> byContained;
+    private final Map<EncodedIndex, EdgeIds> byContaining;
+    //degrees of the indexes, counted by equality like the pairs were counted before the graph held them
+    private final Map<EncodedIndex, Integer> numContaining;
+    private final Map<EncodedIndex, Integer> numContained;
+    private final List<Change> trail = new ArrayList<>();
+
+    private PairGraph(Pair<EncodedIndex, EncodedIndex>[] edges,
+                      Map<EncodedIndex, EdgeIds> byContained,
+                      Map<EncodedIndex, EdgeIds> byContaining,
+                      Map<EncodedIndex, Integer> numContaining,
+                      Map<EncodedIndex, Integer> numContained) {
+        this.edges = edges;
+        this.byContained = byContained;
+        this.byContaining = byContaining;
+        this.numContaining = numContaining;
+        this.numContained = numContained;
+    }
+
+    /**
+     * Creates the graph of the pairs, with the position of every pair as its id.
+     */
+    static PairGraph of(List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs) {
+        @SuppressWarnings("unchecked")
+        Pair<EncodedIndex, EncodedIndex>[] edges =
+                (Pair<EncodedIndex, EncodedIndex>[]) containedContainingIndexPairs.toArray(new Pair<?, ?>[0]);
+        PairGraph graph = new PairGraph(edges,
+                                        new IdentityHashMap<>(), new IdentityHashMap<>(),
+                                        new HashMap<>(), new HashMap<>());
+        for (int id = 0; id < graph.edges.length; id++) {
+            graph.getEdgeIds(graph.byContained, graph.edges[id].getLeft()).add(id);
+            graph.getEdgeIds(graph.byContaining, graph.edges[id].getRight()).add(id);
+            graph.count(graph.edges[id], 1);
+        }
+        return graph;
+    }
+
+    /**
+     * Independent copy of the current state of the graph (without its trail).
+     */
+    PairGraph copy() {
+        return new PairGraph(edges.clone(), copyEdgeIds(byContained), copyEdgeIds(byContaining),
+                             new HashMap<>(numContaining), new HashMap<>(numContained));
+    }
+
+    static int[] allIds(List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs) {
+        int[] ids = new int[containedContainingIndexPairs.size()];
+        Arrays.setAll(ids, id -> id);
+        return ids;
+    }
+
+    Pair<EncodedIndex, EncodedIndex> get(int id) {
+        return edges[id];
+    }
+
+    /**
+     * @return the ids of the edges which are not removed, in the given order
+     */
+    int[] filter(int[] ids) {
+        int[] filtered = new int[ids.length];
+        int size = 0;
+        for (int id : ids) {
+            if (edges[id] != null) {
+                filtered[size++] = id;
+            }
+        }
+        return size == ids.length ? filtered : Arrays.copyOf(filtered, size);
+    }
+
+    /**
+     * Number of edges in which the index is the contained index, i.e. the number of indexes it can be merged into.
+     */
+    int getNumContaining(EncodedIndex contained) {
+        return numContaining.getOrDefault(contained, 0);
+    }
+
+    /**
+     * Number of edges in which the index is the containing index, i.e. the number of indexes which can be merged into
+     * it.
+     */
+    int getNumContained(EncodedIndex containing) {
+        return numContained.getOrDefault(containing, 0);
+    }
+
+    /**
+     * True if the index is the contained index of an edge, i.e. it can still be merged into another index.
+     */
+    boolean isContainedIndex(EncodedIndex index) {
+        EdgeIds ids = byContained.get(index);
+        for (int k = 0; ids != null && k < ids.size; k++) {
+            Pair<EncodedIndex, EncodedIndex> edge = edges[ids.ids[k]];
+            if (edge != null && edge.getLeft() == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges the contained index of edge {@code id} into its containing index, which is replaced by
+     * {@code constrainedContainingIndex}: the edges of the contained index are removed, and the edges of the containing
+     * index are kept (with the constrained index) only if the containment still holds.
+     *
+     * @param pool pool to recheck the containments on in parallel, or null to recheck them in the calling thread
+     * @return mark to pass to {@link #undo(int)}
+     */
+    int merge(int id, EncodedIndex constrainedContainingIndex, ForkJoinPool pool) {
+        int mark = trail.size();
+        EncodedIndex removed = edges[id].getLeft();
+        EncodedIndex oldContaining = edges[id].getRight();
+        trail.add(new Change(-1, null, constrainedContainingIndex));
+
+        for (int incident : incidentIds(byContained, removed, true)) {
+            setEdge(incident, null);
+        }
+        for (int incident : incidentIds(byContaining, removed, false)) {
+            setEdge(incident, null);
+        }
+
+        //the containing index has additional constraints now, recheck the containments it is part of
+        int[] containedIds = incidentIds(byContaining, oldContaining, false);
+        int[] containingIds = incidentIds(byContained, oldContaining, true);
+        boolean[] stillContained = new boolean[containedIds.length + containingIds.length];
+        if (pool != null && stillContained.length >= ParallelRange.MIN_CHUNK_SIZE) {
+            ParallelRange.forEach(pool, stillContained.length, k -> stillContained[k] = recheck(
+                    k, containedIds, containingIds, constrainedContainingIndex));
+        } else {
+            for (int k = 0; k < stillContained.length; k++) {
+                stillContained[k] = recheck(k, containedIds, containingIds, constrainedContainingIndex);
+            }
+        }
+        for (int k = 0; k < containedIds.length; k++) {
+            int edgeId = containedIds[k];
+            if (stillContained[k]) {
+                setEdge(edgeId, Pair.of(edges[edgeId].getLeft(), constrainedContainingIndex));
+                getEdgeIds(byContaining, constrainedContainingIndex).add(edgeId);
+            } else {
+                setEdge(edgeId, null);
+            }
+        }
+        for (int k = 0; k < containingIds.length; k++) {
+            int edgeId = containingIds[k];
+            if (stillContained[containedIds.length + k]) {
+                setEdge(edgeId, Pair.of(constrainedContainingIndex, edges[edgeId].getRight()));
+                getEdgeIds(byContained, constrainedContainingIndex).add(edgeId);
+            } else {
+                setEdge(edgeId, null);
+            }
+        }
+        return mark;
+    }
+
+    /**
+     * Reverts the merges done since {@code mark} was returned.
+     */
+    void undo(int mark) {
+        for (int k = trail.size() - 1; k >= mark; k--) {
+            Change change = trail.remove(k);
+            if (change.newIndex != null) {
+                byContained.remove(change.newIndex);
+                byContaining.remove(change.newIndex);
+            } else {
+                count(edges[change.edgeId], -1);
+                edges[change.edgeId] = change.previousEdge;
+                count(change.previousEdge, 1);
+            }
+        }
+    }
+
+    private void count(Pair<EncodedIndex, EncodedIndex> edge, int delta) {
+        if (edge != null) {
+            numContaining.merge(edge.getLeft(), delta, (count, d) -> count + d != 0 ? count + d : null);
+            numContained.merge(edge.getRight(), delta, (count, d) -> count + d != 0 ? count + d : null);
+        }
+    }
+
+    private boolean recheck(int k, int[] containedIds, int[] containingIds, EncodedIndex constrainedContainingIndex) {
+        return k < containedIds.length
+                ? IndexOptimizer.isContained(edges[containedIds[k]].getLeft(), constrainedContainingIndex)
+                : IndexOptimizer.isContained(constrainedContainingIndex,
+                                             edges[containingIds[k - containedIds.length]].getRight());
+    }
+
+    private void setEdge(int id, Pair<EncodedIndex, EncodedIndex> edge) {
+        trail.add(new Change(id, edges[id], null));
+        count(edges[id], -1);
+        edges[id] = edge;
+        count(edge, 1);
+    }
+
+    /**
+     * Ids of the edges which are not removed and have the index on the given side.
+     */
+    private int[] incidentIds(Map<EncodedIndex, EdgeIds> adjacency, EncodedIndex index, boolean contained) {
+        EdgeIds ids = adjacency.get(index);
+        if (ids == null) {
+            return new int[0];
+        }
+        int[] incident = new int[ids.size];
+        int size = 0;
+        for (int k = 0; k < ids.size; k++) {
+            Pair<EncodedIndex, EncodedIndex> edge = edges[ids.ids[k]];
+            if (edge != null && (contained ? edge.getLeft() : edge.getRight()) == index) {
+                incident[size++] = ids.ids[k];
+            }
+        }
+        return Arrays.copyOf(incident, size);
+    }
+
+    private EdgeIds getEdgeIds(Map<EncodedIndex, EdgeIds> adjacency, EncodedIndex index) {
+        return adjacency.computeIfAbsent(index, i -> new EdgeIds(new int[4], 0));
+    }
+
+    private static Map<EncodedIndex, EdgeIds> copyEdgeIds(Map<EncodedIndex, EdgeIds> adjacency) {
+        Map<EncodedIndex, EdgeIds> copy = new IdentityHashMap<>(adjacency.size());
+        adjacency.forEach((index, ids) -> copy.put(index, new EdgeIds(ids.ids.clone(), ids.size)));
+        return copy;
+    }
+
+    private static final class EdgeIds {
+
+        int[] ids;
+        int size;
+
+        EdgeIds(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * Entry of the trail: either the previous state of an edge, or an index whose adjacency lists were created by a
+     * merge.
+     */
+    private static final class Change {
+
+        final int edgeId;
+        final Pair<EncodedIndex, EncodedIndex> previousEdge;
+        final EncodedIndex newIndex;
+
+        Change(int edgeId, Pair<EncodedIndex, EncodedIndex> previousEdge, EncodedIndex newIndex) {
+            this.edgeId = edgeId;
+            this.previousEdge = previousEdge;
+            this.newIndex = newIndex;
+        }
+    }
+
+}
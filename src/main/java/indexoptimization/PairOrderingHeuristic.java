@@ -0,0 +1,94 @@
+package indexoptimization;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.Arrays;
+
+/**
+ * Order in which the search tries the pairs of a state. The order does not change the result of an exhaustive
+ * search, but it decides which solutions are found first (and so how much can be pruned), and which pairs are tried at
+ * all if the number of paths per step is limited.
+ *
+ * The degrees of the indexes are maintained by the {@link PairGraph} while the search merges pairs, so the heuristics
+ * only look them up. Other heuristics are built from keys of the pairs with {@link #byKeys}, and set with
+ * {@link IndexOptimizer#setPairOrderingHeuristic}.
+ */
+public interface PairOrderingHeuristic {
+
+    /**
+     * Pairs whose containing index contains the fewest other indexes first, then the longest containing and the
+     * shortest contained index first.
+     */
+    PairOrderingHeuristic FEWEST_CONTAINED_FIRST = byKeys(
+            (containedLength, containingLength, numContaining, numContained) -> numContained,
+            (containedLength, containingLength, numContaining, numContained) -> -containingLength,
+            (containedLength, containingLength, numContaining, numContained) -> containedLength);
+
+    /**
+     * Pairs whose contained index can be merged into the fewest indexes first (fail first), which quickly settles the
+     * indexes with few options.
+     */
+    PairOrderingHeuristic MOST_CONSTRAINED_FIRST = byKeys(
+            (containedLength, containingLength, numContaining, numContained) -> numContaining,
+            (containedLength, containingLength, numContaining, numContained) -> numContained,
+            (containedLength, containingLength, numContaining, numContained) -> -containingLength);
+
+    /**
+     * Pairs with the longest contained index first, which removes the most fields per merge.
+     */
+    PairOrderingHeuristic LARGEST_REDUCTION_FIRST = byKeys(
+            (containedLength, containingLength, numContaining, numContained) -> -containedLength,
+            (containedLength, containingLength, numContaining, numContained) -> numContained,
+            (containedLength, containingLength, numContaining, numContained) -> -containingLength);
+
+    /**
+     * @param pairIds ids of the pairs of the state in the graph
+     * @return the ids in the order in which the pairs are tried
+     */
+    int[] order(PairGraph pairGraph, int[] pairIds);
+
+    /**
+     * Orders the pairs by the given keys (lower first), keeping the given order between pairs with equal keys.
+     */
+    static PairOrderingHeuristic byKeys(PairKey... keys) {
+        PairKey[] pairKeyFunctions = keys.clone();
+        return (pairGraph, pairIds) -> {
+            int[][] pairKeys = new int[pairIds.length][pairKeyFunctions.length];
+            Integer[] positions = new Integer[pairIds.length];
+            for (int i = 0; i < pairIds.length; i++) {
+                Pair<EncodedIndex, EncodedIndex> pair = pairGraph.get(pairIds[i]);
+                int containedLength = pair.getLeft().getLength();
+                int containingLength = pair.getRight().getLength();
+                int numContaining = pairGraph.getNumContaining(pair.getLeft());
+                int numContained = pairGraph.getNumContained(pair.getRight());
+                for (int k = 0; k < pairKeyFunctions.length; k++) {
+                    pairKeys[i][k] = pairKeyFunctions[k].of(containedLength, containingLength, numContaining,
+                                                             numContained);
+                }
+                positions[i] = i;
+            }
+            Arrays.sort(positions, (i, j) -> Arrays.compare(pairKeys[i], pairKeys[j]));
+            int[] ordered = new int[pairIds.length];
+            for (int i = 0; i < ordered.length; i++) {
+                ordered[i] = pairIds[positions[i]];
+            }
+            return ordered;
+        };
+    }
+
+    /**
+     * Key of a pair of the current state, from the lengths of its indexes and their degrees in the state.
+     */
+    @FunctionalInterface
+    interface PairKey {
+
+        /**
+         * @param containedLength  length of the contained index
+         * @param containingLength length of the containing index
+         * @param numContaining    number of indexes the contained index can be merged into
+         * @param numContained     number of indexes which can be merged into the containing index
+         */
+        int of(int containedLength, int containingLength, int numContaining, int numContained);
+    }
+
+}
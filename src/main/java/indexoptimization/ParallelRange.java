@@ -0,0 +1,53 @@
+package indexoptimization;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a loop body for every position of a range as fork-join tasks, splitting the range in halves down to chunks of
+ * {@link #MIN_CHUNK_SIZE} positions. The body is expected to write its result to a slot of its own (e.g. an array
+ * element), so the results keep the order of the range no matter in which order the chunks run.
+ */
+final class ParallelRange extends RecursiveAction {
+
+    static final int MIN_CHUNK_SIZE = 64;
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final IntConsumer body;
+
+    private ParallelRange(int from, int to, IntConsumer body) {
+        this.from = from;
+        this.to = to;
+        this.body = body;
+    }
+
+    /**
+     * Runs the body for 0 to {@code size - 1} on the given pool, joining the pool if the calling thread is not one of
+     * its workers.
+     */
+    static void forEach(ForkJoinPool pool, int size, IntConsumer body) {
+        ParallelRange task = new ParallelRange(0, size, body);
+        if (ForkJoinTask.getPool() == pool) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= MIN_CHUNK_SIZE) {
+            for (int i = from; i < to; i++) {
+                body.accept(i);
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new ParallelRange(from, middle, body), new ParallelRange(middle, to, body));
+    }
+
+}
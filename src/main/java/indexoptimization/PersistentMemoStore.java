@@ -0,0 +1,466 @@
+package indexoptimization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Memo store backed by an append-only file, so that the memoized sub-problems survive the optimizer (and the
+ * process). Another memo store is kept in front of the file, and the entries found in the file are copied to it.
+ *
+ * Field ids are only valid within a run, so the file keeps its own table of field names, and keys and indexes are
+ * translated to the file field ids by field name. The file consists of a header followed by records:
+ *
+ *     header:       magic (int), version (int), configuration length (int), UTF-8 configuration
+ *     record:       type (byte), payload length (int), payload, CRC32 of the payload (int)
+ *     field record: file field id, name length, UTF-8 name
+ *     entry record: key hash (long), depth, key length, key, memoized index list
+ *
+ * A key is the index list of the sub-problem with the indexes in canonical order. An index list is the number of
+ * indexes followed by the indexes, and an index is the number of field sets followed by each field set as the number
+ * of fields and the sorted, delta-encoded file field ids. All numbers except the header, the record framing and the
+ * key hash are varints. The key hash is a 64-bit FNV-1a hash of the key, the keys are compared on lookup to rule out
+ * collisions.
+ *
+ * The memoized lists depend on the configuration of the search (see {@link MemoScope#getFingerprint()}), so the file
+ * is bound to one configuration: the one of the first search storing an entry in it, which is written to the header.
+ * Searches of other configurations, or with a strategy without a fingerprint, do not read or write the file, they only
+ * use the in-memory store. {@link #clear()} empties the file and unbinds it.
+ *
+ * When the store is opened, the file is locked, memory-mapped and scanned to build the field table and the key hash
+ * index; new records are appended to the end of the file. The lock is held until the store is closed, so only one
+ * store (in any process) uses the file at a time. A record that was not completely written (e.g. because the process
+ * was killed) is ignored and overwritten by the next append.
+ */
+final class PersistentMemoStore extends MemoStore {
+
+    private static final int MAGIC = 0x49534f4d; // "ISOM"
+    private static final int VERSION = 2;
+    private static final int FIXED_HEADER_SIZE = 12;
+    private static final int RECORD_FRAME_SIZE = 9;
+    private static final byte FIELD_RECORD = 1;
+    private static final byte ENTRY_RECORD = 2;
+
+    private final MemoStore inMemory;
+    private final FileChannel channel;
+    private final MappedByteBuffer mapped; // content of the file at the time it was opened
+    private long mappedSize; // part of the mapping that is still valid
+    private final Map<String, Integer> fileFieldIds = new HashMap<>();
+    private final List<String> fileFieldNames = new ArrayList<>();
+    private final Map<Long, Long> entryRecordPositions = new HashMap<>();
+    private String configuration; // configuration the file is bound to, null if not bound yet
+    private long headerSize;
+    private long end;
+
+    PersistentMemoStore(Path file, MemoStore inMemory) throws IOException {
+        this.inMemory = inMemory;
+        this.channel = FileChannel.open(file,
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        try {
+            lock(file);
+            long size = channel.size();
+            if (size == 0) {
+                writeHeader(null);
+                size = headerSize;
+            }
+            this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+            readHeader(file, size);
+            this.mappedSize = mapped.capacity();
+            this.end = scan(size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    synchronized List<EncodedIndex> lookup(IndexListKey key, MemoScope scope) {
+        List<EncodedIndex> indexes = inMemory.lookup(key, scope);
+        if (indexes != null || !isBoundTo(scope.getFingerprint())) {
+            return indexes;
+        }
+        byte[] fileKey = encodeKey(key, scope.dictionary, false);
+        if (fileKey == null) {
+            return null; // the key has fields that never were in the file
+        }
+        Long position = entryRecordPositions.get(hash(fileKey));
+        if (position == null) {
+            return null;
+        }
+        ByteBuffer payload = readPayload(position);
+        payload.getLong(); // hash
+        int depth = readVarInt(payload);
+        byte[] storedKey = new byte[readVarInt(payload)];
+        payload.get(storedKey);
+        if (!Arrays.equals(fileKey, storedKey)) {
+            return null; // hash collision
+        }
+        indexes = decodeIndexList(payload, scope.dictionary);
+        if (indexes != null) {
+            inMemory.put(key, indexes, depth, scope);
+        }
+        return indexes;
+    }
+
+    @Override
+    synchronized void put(IndexListKey key, List<EncodedIndex> indexes, int depth, MemoScope scope) {
+        inMemory.put(key, indexes, depth, scope);
+        if (!bindTo(scope.getFingerprint())) {
+            return; // the file holds the entries of another configuration
+        }
+        byte[] fileKey = encodeKey(key, scope.dictionary, true);
+        long hash = hash(fileKey);
+        if (entryRecordPositions.containsKey(hash)) {
+            return;
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeLong(payload, hash);
+        writeVarInt(payload, depth);
+        writeVarInt(payload, fileKey.length);
+        payload.writeBytes(fileKey);
+        writeIndexList(payload, indexes, scope.dictionary);
+        entryRecordPositions.put(hash, append(ENTRY_RECORD, payload.toByteArray()));
+    }
+
+    @Override
+    public synchronized void clear() {
+        inMemory.clear();
+        try {
+            writeHeader(null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fileFieldIds.clear();
+        fileFieldNames.clear();
+        entryRecordPositions.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        inMemory.close();
+        try {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    long entryCount() {
+        return inMemory.entryCount();
+    }
+
+    @Override
+    long weight() {
+        return inMemory.weight();
+    }
+
+    @Override
+    long evictionCount() {
+        return inMemory.evictionCount();
+    }
+
+    synchronized int persistedEntryCount() {
+        return entryRecordPositions.size();
+    }
+
+    private void lock(Path file) throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock(); // released when the channel is closed
+        } catch (OverlappingFileLockException e) {
+            lock = null; // locked by another store of this process
+        }
+        if (lock == null) {
+            throw new IOException(file + " is in use by another memo store");
+        }
+    }
+
+    private void readHeader(Path file, long size) throws IOException {
+        if (size < FIXED_HEADER_SIZE || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a memo file (or has an unsupported version)");
+        }
+        int length = mapped.getInt(8);
+        if (length < 0 || FIXED_HEADER_SIZE + length > size) {
+            throw new IOException(file + " has a corrupt header");
+        }
+        byte[] bytes = new byte[length];
+        mapped.duplicate().position(FIXED_HEADER_SIZE).get(bytes);
+        configuration = length > 0 ? new String(bytes, StandardCharsets.UTF_8) : null;
+        headerSize = FIXED_HEADER_SIZE + length;
+    }
+
+    /**
+     * Replaces the whole file with a header binding it to the given configuration (or to none).
+     */
+    private void writeHeader(String configuration) throws IOException {
+        byte[] bytes = configuration != null ? configuration.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE + bytes.length)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(bytes.length)
+                .put(bytes);
+        channel.truncate(0);
+        writeFully(header.flip(), 0);
+        this.configuration = configuration;
+        headerSize = header.capacity();
+        end = headerSize;
+        mappedSize = 0; // the file was rewritten, the mapping is not valid anymore
+    }
+
+    private boolean isBoundTo(String fingerprint) {
+        return fingerprint != null && fingerprint.equals(configuration);
+    }
+
+    /**
+     * Binds the file to the configuration if it is not bound yet (it then has no records).
+     *
+     * @return true if the file is bound to the configuration
+     */
+    private boolean bindTo(String fingerprint) {
+        if (fingerprint != null && configuration == null) {
+            try {
+                writeHeader(fingerprint);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return isBoundTo(fingerprint);
+    }
+
+    /**
+     * Reads the records written so far and returns the position after the last complete record.
+     */
+    private long scan(long size) throws IOException {
+        long position = headerSize;
+        while (position + RECORD_FRAME_SIZE <= size) {
+            ByteBuffer frame = read(position, 5);
+            byte type = frame.get();
+            int length = frame.getInt();
+            if (length < 0 || position + RECORD_FRAME_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = read(position + 5, length + 4);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate().limit(length));
+            if ((int) crc.getValue() != payload.getInt(length)) {
+                break;
+            }
+            payload.limit(length);
+            if (type == FIELD_RECORD) {
+                int fileFieldId = readVarInt(payload);
+                byte[] name = new byte[readVarInt(payload)];
+                payload.get(name);
+                if (fileFieldId != fileFieldNames.size()) {
+                    break;
+                }
+                registerField(new String(name, StandardCharsets.UTF_8));
+            } else if (type == ENTRY_RECORD) {
+                entryRecordPositions.putIfAbsent(payload.getLong(), position);
+            } else {
+                break;
+            }
+            position += RECORD_FRAME_SIZE + length;
+        }
+        return position;
+    }
+
+    private ByteBuffer readPayload(long recordPosition) {
+        try {
+            int length = read(recordPosition + 1, 4).getInt();
+            return read(recordPosition + 5, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        if (position + length <= mappedSize) {
+            return mapped.duplicate().position((int) position).limit((int) position + length).slice();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of memo file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private long append(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_FRAME_SIZE + payload.length)
+                .put(type)
+                .putInt(payload.length)
+                .put(payload)
+                .putInt((int) crc.getValue());
+        long position = end;
+        try {
+            writeFully(record.flip(), position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        end += record.capacity();
+        return position;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void registerField(String name) {
+        fileFieldIds.put(name, fileFieldNames.size());
+        fileFieldNames.add(name);
+    }
+
+    private int fileFieldId(String name, boolean add) {
+        Integer fileFieldId = fileFieldIds.get(name);
+        if (fileFieldId == null && add) {
+            fileFieldId = fileFieldNames.size();
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(payload, fileFieldId);
+            writeVarInt(payload, bytes.length);
+            payload.writeBytes(bytes);
+            append(FIELD_RECORD, payload.toByteArray());
+            registerField(name);
+        }
+        return fileFieldId != null ? fileFieldId : -1;
+    }
+
+    /**
+     * @return the key translated to file field ids, or null if {@code addFields} is false and some field is unknown
+     */
+    private byte[] encodeKey(IndexListKey key, FieldDictionary dictionary, boolean addFields) {
+        byte[][] encodedIndexes = new byte[key.size()][];
+        for (int i = 0; i < encodedIndexes.length; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!writeIndex(out, key.getIndexes()[i], dictionary, addFields)) {
+                return null;
+            }
+            encodedIndexes[i] = out.toByteArray();
+        }
+        //the canonical order of the key depends on the field ids of the run, so sort again in file field ids
+        Arrays.sort(encodedIndexes, Arrays::compare);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarInt(out, encodedIndexes.length);
+        for (byte[] encodedIndex : encodedIndexes) {
+            out.writeBytes(encodedIndex);
+        }
+        return out.toByteArray();
+    }
+
+    private void writeIndexList(ByteArrayOutputStream out, List<EncodedIndex> indexes, FieldDictionary dictionary) {
+        writeVarInt(out, indexes.size());
+        for (EncodedIndex index : indexes) {
+            writeIndex(out, index, dictionary, true);
+        }
+    }
+
+    private boolean writeIndex(ByteArrayOutputStream out,
+                               EncodedIndex index,
+                               FieldDictionary dictionary,
+                               boolean addFields) {
+        writeVarInt(out, index.getNumFieldSets());
+        for (int k = 0; k < index.getNumFieldSets(); k++) {
+            int[] ids = index.getFieldIds(k);
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = fileFieldId(dictionary.nameOf(ids[i]), addFields);
+                if (ids[i] < 0) {
+                    return false;
+                }
+            }
+            Arrays.sort(ids);
+            writeVarInt(out, ids.length);
+            int previous = 0;
+            for (int id : ids) {
+                writeVarInt(out, id - previous);
+                previous = id;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the index list translated to the field ids of the run, or null if some field is not in the dictionary
+     */
+    private List<EncodedIndex> decodeIndexList(ByteBuffer in, FieldDictionary dictionary) {
+        int numIndexes = readVarInt(in);
+        List<EncodedIndex> indexes = new ArrayList<>(numIndexes);
+        for (int i = 0; i < numIndexes; i++) {
+            int[][] fieldSets = new int[readVarInt(in)][];
+            for (int k = 0; k < fieldSets.length; k++) {
+                int[] ids = new int[readVarInt(in)];
+                int fileFieldId = 0;
+                for (int f = 0; f < ids.length; f++) {
+                    fileFieldId += readVarInt(in);
+                    ids[f] = dictionary.idOf(fileFieldNames.get(fileFieldId));
+                    if (ids[f] < 0) {
+                        return null;
+                    }
+                }
+                Arrays.sort(ids);
+                fieldSets[k] = ids;
+            }
+            indexes.add(EncodedIndex.of(fieldSets, dictionary));
+        }
+        return indexes;
+    }
+
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+}
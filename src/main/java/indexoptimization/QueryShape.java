@@ -0,0 +1,128 @@
+package indexoptimization;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Normalized shape of a query: the fields it filters on by equality, the fields it sorts by (in order), and the fields
+ * it filters on by range, plus how often the shape was observed.
+ *
+ * The shape is normalized on creation: a field with an equality filter is dropped from the sort and range fields (the
+ * query reads a single value of it), and a sort field is dropped from the range fields (the index is walked in its
+ * order anyway). The order of the equality and range fields does not matter, so they are kept sorted.
+ */
+public final class QueryShape {
+
+    private final List<String> equalityFields;
+    private final List<String> sortFields;
+    private final List<String> rangeFields;
+    private final long frequency;
+
+    private QueryShape(List<String> equalityFields, List<String> sortFields, List<String> rangeFields,
+                       long frequency) {
+        this.equalityFields = equalityFields;
+        this.sortFields = sortFields;
+        this.rangeFields = rangeFields;
+        this.frequency = frequency;
+    }
+
+    public static QueryShape of(List<String> equalityFields,
+                                List<String> sortFields,
+                                List<String> rangeFields,
+                                long frequency) {
+        if (frequency < 0) {
+            throw new IllegalArgumentException("Negative frequency: " + frequency);
+        }
+        Set<String> equality = new TreeSet<>(equalityFields);
+        Set<String> sort = new LinkedHashSet<>(sortFields);
+        sort.removeAll(equality);
+        Set<String> range = new TreeSet<>(rangeFields);
+        range.removeAll(equality);
+        range.removeAll(sort);
+        if (equality.isEmpty() && sort.isEmpty() && range.isEmpty()) {
+            throw new IllegalArgumentException("A query shape needs at least one field");
+        }
+        return new QueryShape(List.copyOf(equality), List.copyOf(sort), List.copyOf(range), frequency);
+    }
+
+    public List<String> getEqualityFields() {
+        return equalityFields;
+    }
+
+    public List<String> getSortFields() {
+        return sortFields;
+    }
+
+    public List<String> getRangeFields() {
+        return rangeFields;
+    }
+
+    public long getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Same shape, observed the given number of times.
+     */
+    QueryShape withFrequency(long frequency) {
+        return new QueryShape(equalityFields, sortFields, rangeFields, frequency);
+    }
+
+    /**
+     * Index serving the shape, with the fields in ESR order: the equality fields first, in any order, then every sort
+     * field in the order of the sort, then the range fields, in any order.
+     */
+    public Index toIndex() {
+        List<IndexFieldSet> fieldSets = new ArrayList<>(sortFields.size() + 2);
+        if (!equalityFields.isEmpty()) {
+            fieldSets.add(toFieldSet(equalityFields));
+        }
+        for (String sortField : sortFields) {
+            fieldSets.add(toFieldSet(List.of(sortField)));
+        }
+        if (!rangeFields.isEmpty()) {
+            fieldSets.add(toFieldSet(rangeFields));
+        }
+        return new Index(fieldSets);
+    }
+
+    private static IndexFieldSet toFieldSet(List<String> fieldNames) {
+        List<IndexField> fields = new ArrayList<>(fieldNames.size());
+        for (String fieldName : fieldNames) {
+            fields.add(new IndexField(fieldName));
+        }
+        return new IndexFieldSet(fields);
+    }
+
+    /**
+     * Shapes are equal if they have the same fields, no matter how often they were observed.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof QueryShape))
+            return false;
+        QueryShape that = (QueryShape) o;
+        return equalityFields.equals(that.equalityFields)
+                && sortFields.equals(that.sortFields)
+                && rangeFields.equals(that.rangeFields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(equalityFields, sortFields, rangeFields);
+    }
+
+    public String toString() {
+        return "eq=" + String.join(",", equalityFields)
+                + " sort=" + String.join(",", sortFields)
+                + " range=" + String.join(",", rangeFields)
+                + " count=" + frequency;
+    }
+
+}
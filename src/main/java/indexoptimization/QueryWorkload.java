@@ -0,0 +1,170 @@
+package indexoptimization;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Query shapes observed on a collection, turned into the indexes serving them.
+ *
+ * Every shape is served by an index with its fields in ESR order (see {@link QueryShape#toIndex()}). These indexes are
+ * the input of the optimizer, and the optimized list is reported with the shapes served by each of its indexes:
+ *
+ * <pre>
+ *     QueryWorkload workload = QueryWorkload.read(Path.of("query-shapes.txt"));
+ *     for (WorkloadIndex index : workload.optimize(IndexOptimizer.createDefaultSingleThreadedOptimizer())) {
+ *         System.out.println(index.getIndex() + ": " + index.getServedFrequency() + " queries");
+ *     }
+ * </pre>
+ */
+public final class QueryWorkload {
+
+    private final List<QueryShape> shapes;
+
+    private QueryWorkload(List<QueryShape> shapes) {
+        this.shapes = shapes;
+    }
+
+    /**
+     * Workload of the given shapes. Equal shapes are merged into one, observed as often as all of them together.
+     */
+    public static QueryWorkload of(List<QueryShape> shapes) {
+        Map<QueryShape, Long> frequencies = new LinkedHashMap<>();
+        for (QueryShape shape : shapes) {
+            frequencies.merge(shape, shape.getFrequency(), Long::sum);
+        }
+        List<QueryShape> deduplicated = new ArrayList<>(frequencies.size());
+        frequencies.forEach((shape, frequency) -> deduplicated.add(shape.withFrequency(frequency)));
+        return new QueryWorkload(List.copyOf(deduplicated));
+    }
+
+    /**
+     * Reads a file of query shapes, one per line, for example:
+     *
+     * <pre>
+     *     # equality, sort and range fields, and the number of times the shape was observed
+     *     eq=customerId,status sort=createdAt range=total count=1200
+     *     eq=customerId range=createdAt count=35
+     * </pre>
+     *
+     * All the keys are optional ({@code count} defaults to 1), and empty lines and lines starting with {@code #} are
+     * skipped.
+     */
+    public static QueryWorkload read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        List<QueryShape> shapes = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                try {
+                    shapes.add(parseShape(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(file + ":" + (i + 1) + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return of(shapes);
+    }
+
+    static QueryShape parseShape(String line) {
+        List<String> equalityFields = List.of();
+        List<String> sortFields = List.of();
+        List<String> rangeFields = List.of();
+        long frequency = 1;
+        for (String token : line.split("\\s+")) {
+            int separator = token.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value: " + token);
+            }
+            String key = token.substring(0, separator);
+            String value = token.substring(separator + 1);
+            switch (key) {
+                case "eq":
+                    equalityFields = parseFields(value);
+                    break;
+                case "sort":
+                    sortFields = parseFields(value);
+                    break;
+                case "range":
+                    rangeFields = parseFields(value);
+                    break;
+                case "count":
+                    try {
+                        frequency = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid count: " + value, e);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown key: " + key);
+            }
+        }
+        return QueryShape.of(equalityFields, sortFields, rangeFields, frequency);
+    }
+
+    private static List<String> parseFields(String value) {
+        List<String> fields = new ArrayList<>();
+        for (String field : value.split(",")) {
+            if (!field.isBlank()) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    public List<QueryShape> getShapes() {
+        return shapes;
+    }
+
+    /**
+     * ESR indexes of the shapes, without duplicates (different shapes can be served by the same index).
+     */
+    public List<Index> toIndexes() {
+        Set<Index> indexes = new LinkedHashSet<>();
+        for (QueryShape shape : shapes) {
+            indexes.add(shape.toIndex());
+        }
+        return new ArrayList<>(indexes);
+    }
+
+    /**
+     * Optimizes the ESR indexes of the shapes with the given optimizer.
+     */
+    public List<WorkloadIndex> optimize(IndexOptimizer optimizer) {
+        return getServedShapes(optimizer.optimizeIndexes(toIndexes()));
+    }
+
+    /**
+     * Pairs each of the given indexes with the shapes it serves, i.e. the shapes whose ESR index it contains.
+     */
+    public List<WorkloadIndex> getServedShapes(List<Index> indexes) {
+        List<Index> shapeIndexes = new ArrayList<>(shapes.size());
+        for (QueryShape shape : shapes) {
+            shapeIndexes.add(shape.toIndex());
+        }
+        List<Index> allIndexes = new ArrayList<>(shapeIndexes);
+        allIndexes.addAll(indexes);
+        FieldDictionary dictionary = FieldDictionary.of(allIndexes);
+        List<EncodedIndex> encodedShapeIndexes = dictionary.encode(shapeIndexes);
+
+        List<WorkloadIndex> servedShapes = new ArrayList<>(indexes.size());
+        for (Index index : indexes) {
+            EncodedIndex encodedIndex = EncodedIndex.encode(index, dictionary);
+            List<QueryShape> served = new ArrayList<>();
+            for (int i = 0; i < shapes.size(); i++) {
+                if (IndexOptimizer.isContained(encodedShapeIndexes.get(i), encodedIndex)) {
+                    served.add(shapes.get(i));
+                }
+            }
+            servedShapes.add(new WorkloadIndex(index, served));
+        }
+        return servedShapes;
+    }
+
+}
@@ -0,0 +1,118 @@
+package indexoptimization;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * State shared by all search steps of a single {@link IndexOptimizer#optimizeIndexes(java.util.List)} call. When the
+ * indexes are split into independent components (see {@link IndexComponent}), every component is searched with its
+ * own context (see {@link #forComponent(int, int)}), which has its own incumbent, but shares the time budget and the
+ * cancellation with the other components.
+ */
+final class SearchContext {
+
+    final MemoScope memoScope;
+    final FieldDictionary dictionary;
+    final Executor executor; // null if the search runs in the calling thread
+    final int maxForkDepth;
+    final boolean bounded;   // true if the strategy provides costs, so subtrees can be pruned
+    final IncumbentPublisher incumbentPublisher; // null if nobody listens to the improvements
+    final int component;     // position of the searched component in the incumbent publisher
+    private final StopCondition stopCondition;
+
+    // cost of the best index list found so far, shared by all threads
+    private final AtomicReference<long[]> incumbentCost = new AtomicReference<>();
+
+    /**
+     * @param timeBudget time after which the search stops exploring new sub-problems, or null for no limit
+     */
+    SearchContext(MemoScope memoScope, Executor executor, int maxForkDepth, boolean bounded,
+                  Duration timeBudget, IncumbentPublisher incumbentPublisher) {
+        this(memoScope, executor, maxForkDepth, bounded, incumbentPublisher, 0, new StopCondition(timeBudget));
+    }
+
+    private SearchContext(MemoScope memoScope, Executor executor, int maxForkDepth, boolean bounded,
+                          IncumbentPublisher incumbentPublisher, int component, StopCondition stopCondition) {
+        this.memoScope = memoScope;
+        this.dictionary = memoScope.dictionary;
+        this.executor = executor;
+        this.maxForkDepth = maxForkDepth;
+        this.bounded = bounded;
+        this.incumbentPublisher = incumbentPublisher;
+        this.component = component;
+        this.stopCondition = stopCondition;
+    }
+
+    SearchContext forComponent(int component, int maxForkDepth) {
+        return new SearchContext(memoScope, executor, maxForkDepth, bounded, incumbentPublisher, component,
+                                 stopCondition);
+    }
+
+    /**
+     * @return true if the time budget ran out or the search was cancelled
+     */
+    boolean shouldStop() {
+        return stopCondition.shouldStop();
+    }
+
+    void cancel() {
+        stopCondition.cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return stopCondition.cancelled;
+    }
+
+    void offerIncumbent(long[] cost) {
+        if (cost == null) {
+            return;
+        }
+        long[] current;
+        do {
+            current = incumbentCost.get();
+            if (current != null && compare(cost, current) >= 0) {
+                return;
+            }
+        } while (!incumbentCost.compareAndSet(current, cost));
+    }
+
+    /**
+     * @return cost of the incumbent if a list with the given lower bound of the cost is strictly worse than it, null
+     * otherwise
+     */
+    long[] getDominatingIncumbentCost(long[] lowerBound) {
+        long[] current = incumbentCost.get();
+        return current != null && compare(lowerBound, current) > 0 ? current : null;
+    }
+
+    /**
+     * Lexicographic comparison of the components both costs have.
+     */
+    static int compare(long[] cost1, long[] cost2) {
+        int n = Math.min(cost1.length, cost2.length);
+        return Arrays.compare(cost1, 0, n, cost2, 0, n);
+    }
+
+    private static final class StopCondition {
+
+        private final long deadlineNanos;
+        private final boolean hasDeadline;
+        private volatile boolean expired;
+        private volatile boolean cancelled;
+
+        StopCondition(Duration timeBudget) {
+            this.hasDeadline = timeBudget != null;
+            this.deadlineNanos = hasDeadline ? System.nanoTime() + timeBudget.toNanos() : 0;
+        }
+
+        boolean shouldStop() {
+            if (!expired && hasDeadline && System.nanoTime() - deadlineNanos >= 0) {
+                expired = true;
+            }
+            return expired || cancelled;
+        }
+    }
+
+}
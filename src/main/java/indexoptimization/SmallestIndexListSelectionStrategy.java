@@ -20,4 +20,40 @@ public class SmallestIndexListSelectionStrategy implements IndexListSelectionStr
         }
         return bestIndexSetList;
     }
+
+    @Override
+    public boolean isSeparable() {
+        return true;
+    }
+
+    @Override
+    public boolean isMonotone() {
+        return true;
+    }
+
+    @Override
+    public boolean isRankedByCost() {
+        return true;
+    }
+
+    @Override
+    public long[] cost(List<Index> indexes) {
+        return new long[]{indexes.size()};
+    }
+
+    @Override
+    public long[] indexCost(int length) {
+        return new long[]{1};
+    }
+
+    @Override
+    public long[] costLowerBound(List<Index> permanentIndexes) {
+        //every reachable list has at least the indexes which can not be removed
+        return cost(permanentIndexes);
+    }
+
+    @Override
+    public String getFingerprint() {
+        return "smallest";
+    }
 }
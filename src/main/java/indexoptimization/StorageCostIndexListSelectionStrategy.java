@@ -0,0 +1,162 @@
+package indexoptimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Chooses the index list which is cheapest to maintain: the storage of the indexes plus the bytes written to them by
+ * the inserts into the collection, estimated from the statistics of the indexed fields.
+ *
+ * For each index:
+ * - every document has one entry per combination of the elements of its array fields (one entry if there are none)
+ * - an entry holds the key (the values of all indexed fields) and a record id; with prefix compression, an entry only
+ *   stores its key if the key differs from the previous entry, which it does for at most as many entries as there are
+ *   combinations of the field values
+ * - every insert writes all the entries of the document, keys and record ids
+ *
+ * The cost of a list is the storage in bytes plus the bytes written per second, weighted by the given number of
+ * seconds, summed over the indexes. The cost only depends on the fields of an index, not on their order.
+ */
+public class StorageCostIndexListSelectionStrategy implements IndexListSelectionStrategy {
+
+    private static final double ENTRY_OVERHEAD_BYTES = 12; // record id and per-entry bookkeeping of the index
+    private static final double ONE_DAY_SECONDS = 24 * 60 * 60;
+
+    private final Map<String, FieldStatistics> fieldStatistics;
+    private final double numDocuments;
+    private final double insertsPerSecond;
+    private final double writeCostSeconds;
+
+    /**
+     * Weighs one day of writes the same as the storage.
+     */
+    public StorageCostIndexListSelectionStrategy(Map<String, FieldStatistics> fieldStatistics,
+                                                 double numDocuments,
+                                                 double insertsPerSecond) {
+        this(fieldStatistics, numDocuments, insertsPerSecond, ONE_DAY_SECONDS);
+    }
+
+    /**
+     * @param fieldStatistics  statistics of every indexed field, by field name
+     * @param numDocuments     number of documents in the collection
+     * @param insertsPerSecond rate of inserts into the collection
+     * @param writeCostSeconds the bytes written per second are weighed with this many seconds against the storage
+     */
+    public StorageCostIndexListSelectionStrategy(Map<String, FieldStatistics> fieldStatistics,
+                                                 double numDocuments,
+                                                 double insertsPerSecond,
+                                                 double writeCostSeconds) {
+        if (numDocuments < 0 || insertsPerSecond < 0 || writeCostSeconds < 0) {
+            throw new IllegalArgumentException("Invalid collection statistics: " + numDocuments + " documents, "
+                                               + insertsPerSecond + " inserts per second, write cost of "
+                                               + writeCostSeconds + " seconds");
+        }
+        this.fieldStatistics = Map.copyOf(fieldStatistics);
+        this.numDocuments = numDocuments;
+        this.insertsPerSecond = insertsPerSecond;
+        this.writeCostSeconds = writeCostSeconds;
+    }
+
+    @Override
+    public List<List<Index>> choseBestIndexSets(List<List<Index>> indexCandidates) {
+        //chose the cheapest sets
+        long[] minCost = null;
+        List<List<Index>> bestIndexSetList = new ArrayList<>();
+        for (List<Index> indexes : indexCandidates) {
+            long[] cost = cost(indexes);
+            int comparison = minCost == null ? -1 : Arrays.compare(cost, minCost);
+            if (comparison < 0) {
+                bestIndexSetList.clear();
+                minCost = cost;
+            }
+            if (comparison <= 0) {
+                bestIndexSetList.add(indexes);
+            }
+        }
+        return bestIndexSetList;
+    }
+
+    @Override
+    public boolean isSeparable() {
+        return true;
+    }
+
+    @Override
+    public boolean isMonotone() {
+        return true;
+    }
+
+    @Override
+    public boolean isRankedByCost() {
+        return true;
+    }
+
+    @Override
+    public long[] cost(List<Index> indexes) {
+        long sum = 0;
+        for (Index index : indexes) {
+            sum += maintenanceCost(index);
+        }
+        return new long[]{sum};
+    }
+
+    @Override
+    public long[] costLowerBound(List<Index> permanentIndexes) {
+        //the fields of the indexes do not change anymore, only their order, which does not change their costs
+        return cost(permanentIndexes);
+    }
+
+    @Override
+    public long[] costChange(Index removed, Index added) {
+        long change = 0;
+        if (removed != null) {
+            change -= maintenanceCost(removed);
+        }
+        if (added != null) {
+            change += maintenanceCost(added);
+        }
+        return new long[]{change};
+    }
+
+    @Override
+    public String getFingerprint() {
+        StringBuilder fingerprint = new StringBuilder("storageCost(")
+                .append(numDocuments).append(',').append(insertsPerSecond).append(',').append(writeCostSeconds);
+        new TreeMap<>(fieldStatistics).forEach((name, statistics) -> fingerprint
+                .append(',').append(name.length()).append(':').append(name).append('=')
+                .append(statistics.getAverageKeyWidth()).append('/')
+                .append(statistics.getCardinality()).append('/')
+                .append(statistics.getAverageArrayLength()));
+        return fingerprint.append(')').toString();
+    }
+
+    /**
+     * Estimated storage of the index in bytes plus the weighted bytes written to it per second.
+     */
+    long maintenanceCost(Index index) {
+        double entriesPerDocument = 1;
+        double keyWidth = 0;
+        double numKeys = 1;
+        for (IndexField field : index.getFields()) {
+            FieldStatistics statistics = getStatistics(field);
+            entriesPerDocument *= statistics.getAverageArrayLength();
+            keyWidth += statistics.getAverageKeyWidth();
+            numKeys *= statistics.getCardinality();
+        }
+        double numEntries = numDocuments * entriesPerDocument;
+        double storageBytes = numEntries * ENTRY_OVERHEAD_BYTES + Math.min(numEntries, numKeys) * keyWidth;
+        double writeBytesPerSecond = insertsPerSecond * entriesPerDocument * (keyWidth + ENTRY_OVERHEAD_BYTES);
+        return Math.round(storageBytes + writeCostSeconds * writeBytesPerSecond);
+    }
+
+    private FieldStatistics getStatistics(IndexField field) {
+        FieldStatistics statistics = fieldStatistics.get(field.getName());
+        if (statistics == null) {
+            throw new IllegalArgumentException("No statistics for field " + field);
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,52 @@
+package indexoptimization;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class UnboundedMemoStore extends MemoStore {
+
+    private static final class Entry {
+        final List<EncodedIndex> indexes;
+        final MemoScope scope;
+
+        Entry(List<EncodedIndex> indexes, MemoScope scope) {
+            this.indexes = indexes;
+            this.scope = scope;
+        }
+    }
+
+    private final Map<IndexListKey, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong();
+
+    @Override
+    List<EncodedIndex> lookup(IndexListKey key, MemoScope scope) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.scope.isCompatibleWith(scope) ? entry.indexes : null;
+    }
+
+    @Override
+    void put(IndexListKey key, List<EncodedIndex> indexes, int depth, MemoScope scope) {
+        Entry replaced = entries.put(key, new Entry(indexes, scope));
+        weight.addAndGet(estimateWeight(key, indexes)
+                         - (replaced != null ? estimateWeight(key, replaced.indexes) : 0));
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        weight.set(0);
+    }
+
+    @Override
+    long entryCount() {
+        return entries.size();
+    }
+
+    @Override
+    long weight() {
+        return weight.get();
+    }
+
+}
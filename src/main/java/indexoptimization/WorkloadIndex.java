@@ -0,0 +1,41 @@
+package indexoptimization;
+
+import java.util.List;
+
+/**
+ * Index of an optimized index list, together with the query shapes of the workload it serves.
+ */
+public final class WorkloadIndex {
+
+    private final Index index;
+    private final List<QueryShape> servedShapes;
+
+    WorkloadIndex(Index index, List<QueryShape> servedShapes) {
+        this.index = index;
+        this.servedShapes = List.copyOf(servedShapes);
+    }
+
+    public Index getIndex() {
+        return index;
+    }
+
+    /**
+     * Shapes whose ESR index is a prefix of this index (up to the order of the fields within the field sets), in the
+     * order of the workload.
+     */
+    public List<QueryShape> getServedShapes() {
+        return servedShapes;
+    }
+
+    /**
+     * Total number of times the served shapes were observed.
+     */
+    public long getServedFrequency() {
+        return servedShapes.stream().mapToLong(QueryShape::getFrequency).sum();
+    }
+
+    public String toString() {
+        return index + " serves " + servedShapes;
+    }
+
+}
@@ -0,0 +1,83 @@
+package indexoptimization;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges a pair by copying the index list and the list of pairs, the way the search did before it kept its states in
+ * an {@link IndexListState} and a {@link PairGraph}. Used as the reference for both.
+ */
+public class CopyingMerge {
+
+    static List<EncodedIndex> removeIndex(EncodedIndex contained, List<EncodedIndex> indexes) {
+        List<EncodedIndex> newList = new ArrayList<>(indexes.size() - 1);
+        for (EncodedIndex index : indexes) {
+            if (index != contained) {
+                newList.add(index);
+            } // else skip (remove)
+        }
+        return newList;
+    }
+
+    static List<EncodedIndex> replaceContainingWithConstrained(EncodedIndex containingIndex,
+                                                               EncodedIndex constrainedContainingIndex,
+                                                               List<EncodedIndex> indexes) {
+        List<EncodedIndex> newList = new ArrayList<>(indexes.size());
+        for (EncodedIndex index : indexes) {
+            if (index == containingIndex) {
+                newList.add(constrainedContainingIndex);
+            } else {
+                newList.add(index);
+            }
+        }
+        return newList;
+    }
+
+    static List<Pair<EncodedIndex, EncodedIndex>> getRemainingCcPairs(
+            List<Pair<EncodedIndex, EncodedIndex>> containedContainingIndexPairs,
+            int indexOfRemoved,
+            EncodedIndex constrainedContainingIndex) {
+        EncodedIndex removed = containedContainingIndexPairs.get(indexOfRemoved).getLeft();
+        EncodedIndex oldContaining = containedContainingIndexPairs.get(indexOfRemoved).getRight();
+
+        List<Pair<EncodedIndex, EncodedIndex>> remainingCcPairs = new ArrayList<>();
+        for (Pair<EncodedIndex, EncodedIndex> pair : containedContainingIndexPairs) {
+            pair = revalidatePair(pair, removed, oldContaining, constrainedContainingIndex);
+            if (pair != null) {
+                remainingCcPairs.add(pair);
+            }
+        }
+        return remainingCcPairs;
+    }
+
+    /**
+     * @return the pair after merging {@code removed} into {@code oldContaining}, or null if it does not hold anymore
+     */
+    private static Pair<EncodedIndex, EncodedIndex> revalidatePair(Pair<EncodedIndex, EncodedIndex> pair,
+                                                                   EncodedIndex removed,
+                                                                   EncodedIndex oldContaining,
+                                                                   EncodedIndex constrainedContainingIndex) {
+        EncodedIndex currContaining = pair.getRight();
+        EncodedIndex currContained = pair.getLeft();
+        //remove all pairs that has the removed index in contained or containing
+        if (removed == currContaining || removed == currContained) {
+            return null;
+        }
+        if (currContained == oldContaining) {
+            //the contained has additional constraints now, recheck whether it is still contained in the containing
+            if (IndexOptimizer.isContained(constrainedContainingIndex, currContaining)) {
+                return Pair.of(constrainedContainingIndex, currContaining);
+            }
+            return null;
+        } else if (currContaining == oldContaining) {
+            //the containing has additional constraints, recheck whether it still contains the contained
+            if (IndexOptimizer.isContained(currContained, constrainedContainingIndex)) {
+                return Pair.of(currContained, constrainedContainingIndex);
+            }
+            return null;
+        }
+        return pair;
+    }
+}
@@ -0,0 +1,48 @@
+package indexoptimization;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncodedIndexTest {
+
+    @Test
+    public void testEncodeAndDecode() {
+        Index index = Index.parseIndex("{{a,d}{f}{g,j}{n,r,t,z}}");
+        FieldDictionary dictionary = FieldDictionary.of(List.of(index));
+        EncodedIndex encoded = EncodedIndex.encode(index, dictionary);
+        assertEquals(9, encoded.getLength());
+        assertEquals(4, encoded.getNumFieldSets());
+        assertEquals("{{a,d}{f}{g,j}{n,r,t,z}}", encoded.toIndex(dictionary).toString());
+    }
+
+    @Test
+    public void testEqualityDoesNotDependOnFieldOrder() {
+        FieldDictionary dictionary = new FieldDictionary();
+        EncodedIndex index1 = EncodedIndex.encode(Index.parseIndex("{{a,b}{c}}"), dictionary);
+        EncodedIndex index2 = EncodedIndex.encode(Index.parseIndex("{{b,a}{c}}"), dictionary);
+        EncodedIndex index3 = EncodedIndex.encode(Index.parseIndex("{{c}{a,b}}"), dictionary);
+        assertEquals(index1, index2);
+        assertEquals(index1.hashCode(), index2.hashCode());
+        assertEquals(0, index1.compareTo(index2));
+        assertNotEquals(index1, index3);
+    }
+
+    @Test
+    public void testSparseAndDenseEncodingsAreEqual() {
+        FieldDictionary dictionary = new FieldDictionary();
+        EncodedIndex dense = EncodedIndex.encode(Index.parseIndex("{{a,b}{c}}"), dictionary);
+        for (int i = 0; i < EncodedIndex.SPARSE_THRESHOLD; i++) {
+            dictionary.intern("f" + i);
+        }
+        EncodedIndex sparse = EncodedIndex.encode(Index.parseIndex("{{b,a}{c}}"), dictionary);
+        assertTrue(dense.isDense());
+        assertFalse(sparse.isDense());
+        assertEquals(dense, sparse);
+        assertEquals(0, dense.compareTo(sparse));
+        assertTrue(IndexOptimizer.isContained(sparse, dense));
+    }
+
+}
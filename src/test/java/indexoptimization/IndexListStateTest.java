@@ -0,0 +1,64 @@
+package indexoptimization;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexListStateTest {
+
+    private static final List<Index> INDEXES = Stream.of(
+            "{{a,d,f,g,j,n,r,t,z}}",
+            "{{d,g,r}}",
+            "{{a,z}}",
+            "{{b,r}}",
+            "{{g}}",
+            "{{a}{z}}",
+            "{{d,g}{r,t}}"
+    ).map(Index::parseIndex).collect(Collectors.toList());
+
+    @Test
+    public void testMergeMatchesCopiedLists() {
+        // Arrange
+        FieldDictionary dictionary = FieldDictionary.of(INDEXES);
+        List<EncodedIndex> indexes = dictionary.encode(INDEXES);
+        List<Pair<EncodedIndex, EncodedIndex>> pairs = IndexOptimizer.calculateContainedContainingIndexPairs(indexes);
+        IndexListState state = IndexListState.of(indexes, null);
+
+        // Act & Assert: merge the first remaining pair until none is left, and compare every state with the copies
+        while (!pairs.isEmpty()) {
+            Pair<EncodedIndex, EncodedIndex> cc = pairs.get(0);
+            EncodedIndex constrained = IndexOptimizer.mergeIndexPair(cc.getLeft(), cc.getRight());
+            IndexListState parent = state;
+            List<EncodedIndex> parentIndexes = List.copyOf(parent);
+
+            state = state.merge(cc.getLeft(), cc.getRight(), constrained, null);
+            indexes = CopyingMerge.replaceContainingWithConstrained(
+                    cc.getRight(), constrained, CopyingMerge.removeIndex(cc.getLeft(), indexes));
+            pairs = CopyingMerge.getRemainingCcPairs(pairs, 0, constrained);
+
+            assertEquals(indexes.size(), state.size());
+            for (int i = 0; i < indexes.size(); i++) {
+                assertSame(indexes.get(i), state.get(i));
+            }
+            assertEquals(parentIndexes, parent); // the parent state is not changed by the merge
+        }
+    }
+
+    @Test
+    public void testMergeUnknownIndexThrows() {
+        // Arrange
+        FieldDictionary dictionary = FieldDictionary.of(INDEXES);
+        List<EncodedIndex> indexes = dictionary.encode(INDEXES);
+        IndexListState state = IndexListState.of(indexes.subList(1, indexes.size()), null);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                     () -> state.merge(indexes.get(0), indexes.get(1), indexes.get(0), null));
+    }
+
+}
@@ -5,9 +5,25 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -501,7 +517,6 @@ class IndexOptimizerTest {
         // Act
         IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
         indexOptimizer.memoize = false;
-        indexOptimizer.maskKeyNames = false;
         indexOptimizer.indexListSelectionStrategy = new SmallestIndexListSelectionStrategy();
         List<Index> optimizedIndexes = indexOptimizer.optimizeIndexes(indexes);
         printIndexes("Optimized", optimizedIndexes);
@@ -539,8 +554,8 @@ class IndexOptimizerTest {
                 .map(Index::toStringSorted)
                 .collect(Collectors.toList());
         Assertions.assertEquals(3, outputIndexStrings.size());
-        Assertions.assertTrue(outputIndexStrings.contains("{{a,z}{d,f,g,j,n,r,t}}"));
-        Assertions.assertTrue(outputIndexStrings.contains("{{g}{d,r}}"));
+        Assertions.assertTrue(outputIndexStrings.contains("{{g}{d,r}{a,f,j,n,t,z}}"));
+        Assertions.assertTrue(outputIndexStrings.contains("{{a,z}}"));
         Assertions.assertTrue(outputIndexStrings.contains("{{b,r}}"));
     }
 
@@ -572,6 +587,39 @@ class IndexOptimizerTest {
         Assertions.assertTrue(outputIndexStrings.contains("{{b,r}}"));
     }
 
+    @Test
+    public void testStorageCostIndexListSelectionStrategy_cost() {
+        // Arrange
+        StorageCostIndexListSelectionStrategy strategy = new StorageCostIndexListSelectionStrategy(
+                Map.of("a", FieldStatistics.of(8, 1000), "b", FieldStatistics.multikey(4, 50, 3)), 1000, 10, 100);
+
+        // Act
+        long[] cost = strategy.cost(parseInputStrings(new String[]{"{{a}}", "{{a,b}}"}));
+
+        // Assert
+        //{{a}}: 1000 entries, 1000 * 12 + 1000 * 8 bytes stored, 10 * (8 + 12) bytes written per second
+        //{{a,b}}: 3000 entries, 3000 * 12 + 3000 * 12 bytes stored, 10 * 3 * (12 + 12) bytes written per second
+        Assertions.assertArrayEquals(new long[]{20_000 + 100 * 200 + 72_000 + 100 * 720}, cost);
+    }
+
+    @Test
+    public void testWithStorageCostIndexListSelectionStrategy() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(new String[]{"{{a,b}}", "{{a}}", "{{b}}"});
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        indexOptimizer.setIndexListSelectionStrategy(new ChainingIndexListSelectionStrategy(
+                new StorageCostIndexListSelectionStrategy(
+                        Map.of("a", FieldStatistics.of(8, 1000), "b", FieldStatistics.multikey(4, 50, 3)), 1000, 10),
+                new SmallestIndexListSelectionStrategy()));
+
+        // Act
+        List<Index> optimizedIndexes = indexOptimizer.optimizeIndexes(indexes);
+
+        // Assert: either {{a}} or {{b}} can be merged, keeping the cheaper one
+        Assertions.assertEquals(List.of("{{b}{a}}", "{{a}}"),
+                                optimizedIndexes.stream().map(Index::toString).collect(Collectors.toList()));
+    }
+
     @Test
     public void test_withSinglethreadedOptimizer_allPaths() {
         // Arrange
@@ -743,6 +791,282 @@ class IndexOptimizerTest {
         Assertions.assertTrue(outputIndexStrings.contains("{{b,r}}"));
     }
 
+    @Test
+    public void test_forkedSearch_matchesSingleThreadedSearch() {
+        // Arrange: enough pairs are left below the first level for its branches to be forked as well
+        List<Index> indexes = parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 16));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        IndexOptimizer forkingOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        forkingOptimizer.setExecutor(pool);
+
+        // Act
+        OptimizationResult singleThreadedResult =
+                IndexOptimizer.createDefaultSingleThreadedOptimizer().optimizeIndexes(indexes, null);
+        OptimizationResult forkedResult = forkingOptimizer.optimizeIndexes(indexes, null);
+        pool.shutdown();
+
+        // Assert: the branches are reduced in the same order, so even the ties are broken the same way
+        Assertions.assertEquals(IndexOptimizer.MAX_FORK_DEPTH, forkingOptimizer.maxForkDepth);
+        Assertions.assertEquals(singleThreadedResult.getIndexes(), forkedResult.getIndexes());
+        Assertions.assertTrue(forkedResult.isProvenOptimal());
+    }
+
+    @Test
+    public void test_strategyGetsAllCandidatesUnlessItsChoiceIsIncremental() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 8));
+        int[] maxNumCandidates = new int[2];
+        List<IndexListSelectionStrategy> strategies = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            int strategyNumber = i;
+            strategies.add(new IndexListSelectionStrategy() {
+                @Override
+                public List<List<Index>> choseBestIndexSets(List<List<Index>> indexCandidates) {
+                    maxNumCandidates[strategyNumber] = Math.max(maxNumCandidates[strategyNumber],
+                                                                indexCandidates.size());
+                    //the first of the lists with the lowest description, which orders all the lists
+                    return List.of(indexCandidates.stream()
+                                           .min(Comparator.comparing(IndexOptimizerTest::describeSorted))
+                                           .orElseThrow());
+                }
+
+                @Override
+                public boolean isChoiceIncremental() {
+                    return strategyNumber == 1;
+                }
+            });
+        }
+
+        // Act
+        List<List<Index>> optimizedIndexes = new ArrayList<>();
+        for (IndexListSelectionStrategy strategy : strategies) {
+            IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+            indexOptimizer.setIndexListSelectionStrategy(strategy);
+            optimizedIndexes.add(indexOptimizer.optimizeIndexes(indexes));
+        }
+
+        // Assert: the incremental choice only sees the best list so far and the next candidate
+        Assertions.assertTrue(maxNumCandidates[0] > 2);
+        Assertions.assertEquals(2, maxNumCandidates[1]);
+        Assertions.assertEquals(optimizedIndexes.get(0), optimizedIndexes.get(1));
+    }
+
+    @Test
+    public void test_forkedSearch_keepsTiesInTheSameOrder() {
+        // Arrange: the strategy keeps all the ties and chooses the last one offered
+        List<Index> indexes = parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 12));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        IndexOptimizer singleThreadedOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        singleThreadedOptimizer.setIndexListSelectionStrategy(new LastOfSmallestIndexListSelectionStrategy());
+        IndexOptimizer forkingOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        forkingOptimizer.setIndexListSelectionStrategy(new LastOfSmallestIndexListSelectionStrategy());
+        forkingOptimizer.setExecutor(pool);
+
+        // Act
+        List<Index> singleThreadedIndexes = singleThreadedOptimizer.optimizeIndexes(indexes);
+        List<Index> forkedIndexes = forkingOptimizer.optimizeIndexes(indexes);
+        pool.shutdown();
+
+        // Assert
+        Assertions.assertEquals(IndexOptimizer.MAX_FORK_DEPTH, forkingOptimizer.maxForkDepth);
+        Assertions.assertEquals(singleThreadedIndexes, forkedIndexes);
+    }
+
+    @Test
+    public void test_withSharedExecutor() {
+        // Arrange
+        String[] inputIndexStrings = {
+                "{{a,d,f,g,j,n,r,t,z}}",
+                "{{d,g,r}}",
+                "{{a,z}}",
+                "{{b,r}}",
+                "{{g}}"
+        };
+        List<Index> indexes = parseInputStrings(inputIndexStrings);
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        // Act
+        List<Index> optimizedIndexes;
+        try (IndexOptimizer first = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+             IndexOptimizer second = IndexOptimizer.createDefaultSingleThreadedOptimizer()) {
+            first.setExecutor(pool);
+            second.setExecutor(pool);
+            first.optimizeIndexes(indexes);
+            optimizedIndexes = second.optimizeIndexes(indexes);
+        }
+
+        // Assert
+        Assertions.assertFalse(pool.isShutdown());
+        pool.shutdown();
+        List<String> outputIndexStrings = optimizedIndexes.stream()
+                .map(Index::toStringSorted)
+                .collect(Collectors.toList());
+        Assertions.assertEquals(3, outputIndexStrings.size());
+        Assertions.assertTrue(outputIndexStrings.contains("{{g}{d,r}{a,f,j,n,t,z}}"));
+        Assertions.assertTrue(outputIndexStrings.contains("{{a,z}}"));
+        Assertions.assertTrue(outputIndexStrings.contains("{{b,r}}"));
+    }
+
+    @Test
+    public void test_large_withPlainExecutor() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // Act
+        IndexOptimizer indexOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+        indexOptimizer.setExecutor(executor);
+        List<Index> optimizedIndexes = indexOptimizer.optimizeIndexes(indexes);
+        executor.shutdown();
+
+        // Assert
+        Assertions.assertEquals(19, optimizedIndexes.size());
+        Assertions.assertEquals(82, optimizedIndexes.stream().mapToInt(Index::getLength).sum());
+    }
+
+    @Test
+    public void test_optimizeCollections() {
+        // Arrange
+        Map<String, List<Index>> indexesByCollection = new LinkedHashMap<>();
+        indexesByCollection.put("small", parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 8)));
+        indexesByCollection.put("large", parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 16)));
+        indexesByCollection.put("smallCopy", parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 8)));
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultMultiThreadedOptimizer(2);
+
+        // Act
+        BatchOptimizationResult result = indexOptimizer.optimizeCollections(indexesByCollection);
+        indexOptimizer.close();
+
+        // Assert
+        Assertions.assertEquals(List.of("small", "large", "smallCopy"), new ArrayList<>(result.getResults().keySet()));
+        Assertions.assertEquals(2, result.getNumOptimizations());
+        Assertions.assertSame(result.getResult("small"), result.getResult("smallCopy"));
+        for (Map.Entry<String, List<Index>> entry : indexesByCollection.entrySet()) {
+            List<Index> expected = IndexOptimizer.createDefaultSingleThreadedOptimizer().optimizeIndexes(entry.getValue());
+            List<Index> actual = result.getResult(entry.getKey()).getIndexes();
+            Assertions.assertEquals(expected.size(), actual.size());
+            Assertions.assertEquals(expected.stream().mapToInt(Index::getLength).sum(),
+                                    actual.stream().mapToInt(Index::getLength).sum());
+            Assertions.assertTrue(result.getResult(entry.getKey()).isProvenOptimal());
+        }
+        Assertions.assertTrue(result.getTotalDuration().compareTo(result.getDuration("large")) >= 0);
+    }
+
+    @Test
+    public void test_optimizeCollections_encodesEveryCollectionWithItsOwnFields() {
+        // Arrange: the fields of the wide collection alone are more than a dense encoding is used for
+        Map<String, List<Index>> indexesByCollection = new LinkedHashMap<>();
+        List<Index> wideIndexes = new ArrayList<>();
+        for (int i = 0; i < EncodedIndex.SPARSE_THRESHOLD; i++) {
+            wideIndexes.add(Index.parseIndex("{{w" + i + "a,w" + i + "b}}"));
+        }
+        indexesByCollection.put("wide", wideIndexes);
+        indexesByCollection.put("small", parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 8)));
+        List<List<EncodedIndex>> memoizedLists = new CopyOnWriteArrayList<>();
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        indexOptimizer.setMemoStore(new RecordingMemoStore(memoizedLists));
+
+        // Act
+        indexOptimizer.optimizeCollections(indexesByCollection);
+
+        // Assert
+        Assertions.assertFalse(memoizedLists.isEmpty());
+        Assertions.assertTrue(memoizedLists.stream().flatMap(List::stream).allMatch(EncodedIndex::isDense));
+    }
+
+    @Test
+    public void test_optimizeCollections_startsTheLargestCollectionsFirst() {
+        // Arrange: the fields of every collection are named after it, so its first memo lookup tells when it started
+        Map<String, List<Index>> indexesByCollection = new LinkedHashMap<>();
+        for (int i = 0; i < 8; i++) {
+            String prefix = "c" + i + "_";
+            indexesByCollection.put(prefix, Arrays.stream(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 6 + i))
+                    .map(indexString -> Index.parseIndex(indexString.replaceAll("(\\d+)", prefix + "$1")))
+                    .collect(Collectors.toList()));
+        }
+        List<String> startOrder = new CopyOnWriteArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        indexOptimizer.setExecutor(pool);
+        indexOptimizer.setMemoStore(new RecordingMemoStore(new CopyOnWriteArrayList<>()) {
+            @Override
+            List<EncodedIndex> lookup(IndexListKey key, MemoScope scope) {
+                String name = scope.dictionary.decode(key.getIndexes()[0]).getFields().get(0).getName();
+                String collection = name.substring(0, name.indexOf('_') + 1);
+                synchronized (startOrder) {
+                    if (!startOrder.contains(collection)) {
+                        startOrder.add(collection);
+                    }
+                }
+                return super.lookup(key, scope);
+            }
+        });
+
+        // Act
+        indexOptimizer.optimizeCollections(indexesByCollection);
+        pool.shutdown();
+
+        // Assert: one worker starts with the largest collection, the other one steals the second largest
+        Assertions.assertEquals(8, startOrder.size());
+        assertThat(startOrder.subList(0, 2), containsInAnyOrder("c7_", "c6_"));
+    }
+
+    @Test
+    public void test_optimizeCollections_withPlainExecutor() {
+        // Arrange
+        Map<String, List<Index>> indexesByCollection = new LinkedHashMap<>();
+        for (int i = 1; i <= 6; i++) {
+            indexesByCollection.put("collection" + i,
+                                    parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 2 * i)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        IndexOptimizer indexOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+        indexOptimizer.setExecutor(executor);
+
+        // Act: more collections than threads, none of them waits for tasks queued behind the others
+        BatchOptimizationResult result = indexOptimizer.optimizeCollections(indexesByCollection);
+        executor.shutdown();
+
+        // Assert
+        Assertions.assertEquals(6, result.getNumOptimizations());
+        for (Map.Entry<String, List<Index>> entry : indexesByCollection.entrySet()) {
+            List<Index> expected = IndexOptimizer.createFastSingleThreadedOptimizer().optimizeIndexes(entry.getValue());
+            Assertions.assertEquals(expected.size(), result.getResult(entry.getKey()).getIndexes().size());
+        }
+    }
+
+    @Test
+    public void test_memoIsNotReusedAcrossDifferentFields() {
+        // Arrange: the second input has the same field ids as the first, but the statistics of its fields are swapped
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        indexOptimizer.setIndexListSelectionStrategy(new StorageCostIndexListSelectionStrategy(
+                Map.of("a", FieldStatistics.of(8, 1000), "b", FieldStatistics.multikey(4, 50, 3),
+                       "x", FieldStatistics.multikey(4, 50, 3), "y", FieldStatistics.of(8, 1000)), 1000, 10));
+        indexOptimizer.optimizeIndexes(parseInputStrings(new String[]{"{{a}}", "{{a,b}}", "{{b}}"}));
+
+        // Act
+        List<Index> optimizedIndexes =
+                indexOptimizer.optimizeIndexes(parseInputStrings(new String[]{"{{x}}", "{{x,y}}", "{{y}}"}));
+
+        // Assert: the cheaper single-field index is kept, which is not the one kept for the first input
+        Assertions.assertEquals(List.of("{{x}{y}}", "{{y}}"),
+                                optimizedIndexes.stream().map(Index::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test_close_shutsDownOwnedExecutor() {
+        // Arrange
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultMultiThreadedOptimizer(2);
+        ExecutorService executor = (ExecutorService) indexOptimizer.getExecutor();
+
+        // Act
+        indexOptimizer.close();
+
+        // Assert
+        Assertions.assertTrue(executor.isShutdown());
+        Assertions.assertNull(indexOptimizer.getExecutor());
+    }
+
     @Test
     public void testWithLargestIndexSetSelectionStrategy_03() {
         // Arrange
@@ -773,6 +1097,612 @@ class IndexOptimizerTest {
         Assertions.assertTrue(outputIndexStrings.contains("{{g}}"));
     }
 
+    @Test
+    public void test_large_with_bounded_memo_store() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+
+        IndexOptimizer indexOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+        indexOptimizer.setMemoStore(MemoStore.bounded(50, -1, EvictionPolicy.SHALLOW_FIRST));
+
+        // Act
+        List<Index> optimizedIndexes = indexOptimizer.optimizeIndexes(indexes);
+        printIndexes("Optimized", optimizedIndexes);
+
+        // Assert
+        MemoStatistics statistics = indexOptimizer.getMemoStore().getStatistics();
+        System.out.println(statistics);
+        Assertions.assertTrue(statistics.getEntryCount() <= 50);
+        Assertions.assertTrue(statistics.getEvictionCount() > 0);
+        Assertions.assertEquals(19, optimizedIndexes.size());
+        Assertions.assertEquals(82, optimizedIndexes.stream().mapToInt(Index::getLength).sum());
+    }
+
+    @Test
+    public void test_memoStoreSharedWithLimitedOptimizer() {
+        // Arrange: an optimizer exploring one path per step fills the store with sub-optimal sub-problems
+        List<Index> indexes = randomIndexes(new Random(7), 9, 8);
+        IndexOptimizer limitedOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        limitedOptimizer.maxNumPathsPerStep = 1;
+        limitedOptimizer.optimizeIndexes(indexes);
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        indexOptimizer.setMemoStore(limitedOptimizer.getMemoStore());
+
+        // Act
+        OptimizationResult result = indexOptimizer.optimizeIndexes(indexes, null);
+
+        // Assert
+        List<Index> expected = IndexOptimizer.createDefaultSingleThreadedOptimizer().optimizeIndexes(indexes);
+        Assertions.assertArrayEquals(indexOptimizer.indexListSelectionStrategy.cost(expected),
+                                     indexOptimizer.indexListSelectionStrategy.cost(result.getIndexes()));
+        Assertions.assertTrue(result.isProvenOptimal());
+    }
+
+    @Test
+    public void test_memoizedListsDoNotRetainSearchStates() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 12));
+        List<List<EncodedIndex>> memoizedLists = new CopyOnWriteArrayList<>();
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        indexOptimizer.setMemoStore(new RecordingMemoStore(memoizedLists));
+
+        // Act
+        indexOptimizer.optimizeIndexes(indexes);
+
+        // Assert: the weight of an entry only counts its own indexes, not the list a state is based on
+        Assertions.assertFalse(memoizedLists.isEmpty());
+        Assertions.assertTrue(memoizedLists.stream().noneMatch(list -> list instanceof IndexListState));
+    }
+
+    @Test
+    public void test_large_with_persistent_memo_store(@TempDir Path dir) throws IOException {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+        Path memoFile = dir.resolve("memo.bin");
+
+        // Act
+        List<Index> coldOptimizedIndexes;
+        try (MemoStore memoStore = MemoStore.persistent(memoFile)) {
+            IndexOptimizer indexOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+            indexOptimizer.setMemoStore(memoStore);
+            coldOptimizedIndexes = indexOptimizer.optimizeIndexes(indexes);
+        }
+        List<Index> warmOptimizedIndexes;
+        MemoStatistics warmStatistics;
+        try (MemoStore memoStore = MemoStore.persistent(memoFile)) {
+            IndexOptimizer indexOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+            indexOptimizer.setMemoStore(memoStore);
+            warmOptimizedIndexes = indexOptimizer.optimizeIndexes(indexes);
+            warmStatistics = memoStore.getStatistics();
+        }
+
+        // Assert
+        Assertions.assertEquals(1, warmStatistics.getHitCount());
+        Assertions.assertEquals(0, warmStatistics.getMissCount());
+        assertThat(warmOptimizedIndexes.stream().map(Index::toStringSorted).collect(Collectors.toList()),
+                   containsInAnyOrder(coldOptimizedIndexes.stream().map(Index::toStringSorted).toArray()));
+    }
+
+    @Test
+    public void test_large_pruningDoesNotChangeResult() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+        IndexOptimizer unprunedOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+        unprunedOptimizer.prune = false;
+        IndexOptimizer prunedOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+
+        // Act
+        List<Index> unprunedIndexes = unprunedOptimizer.optimizeIndexes(indexes);
+        List<Index> prunedIndexes = prunedOptimizer.optimizeIndexes(indexes);
+
+        // Assert
+        assertThat(prunedIndexes.stream().map(Index::toStringSorted).collect(Collectors.toList()),
+                   containsInAnyOrder(unprunedIndexes.stream().map(Index::toStringSorted).toArray()));
+        // every explored sub-problem is memoized, the pruned ones are not
+        Assertions.assertTrue(prunedOptimizer.getMemoStore().getStatistics().getEntryCount()
+                              < unprunedOptimizer.getMemoStore().getStatistics().getEntryCount());
+    }
+
+    @Test
+    public void test_withTimeBudget_provenOptimal() {
+        // Arrange
+        String[] inputIndexStrings = {
+                "{{a,d,f,g,j,n,r,t,z}}",
+                "{{d,g,r}}",
+                "{{a,z}}",
+                "{{b,r}}",
+                "{{g}}"
+        };
+        List<Index> indexes = parseInputStrings(inputIndexStrings);
+
+        // Act
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        OptimizationResult result = indexOptimizer.optimizeIndexes(indexes, Duration.ofMinutes(1));
+
+        // Assert
+        Assertions.assertTrue(result.isProvenOptimal());
+        Assertions.assertFalse(result.isTimedOut());
+        assertThat(result.getIndexes().stream().map(Index::toStringSorted).collect(Collectors.toList()),
+                   containsInAnyOrder("{{g}{d,r}{a,f,j,n,t,z}}", "{{a,z}}", "{{b,r}}"));
+    }
+
+    @Test
+    public void test_large_withExhaustedTimeBudget() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+
+        // Act
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        OptimizationResult result = indexOptimizer.optimizeIndexes(indexes, Duration.ZERO);
+
+        // Assert
+        Assertions.assertFalse(result.isProvenOptimal());
+        Assertions.assertTrue(result.isTimedOut());
+        // nothing but the duplicates is removed
+        Assertions.assertEquals(indexes.stream().map(Index::toStringSorted).distinct().count(),
+                                result.getIndexes().size());
+        Assertions.assertEquals(0, indexOptimizer.getMemoStore().getStatistics().getEntryCount());
+    }
+
+    @Test
+    public void test_large_withTimeBudget_fastOptimizerIsNotProvenOptimal() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+
+        // Act
+        IndexOptimizer indexOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+        OptimizationResult result = indexOptimizer.optimizeIndexes(indexes, Duration.ofMinutes(1));
+
+        // Assert
+        Assertions.assertFalse(result.isProvenOptimal());
+        Assertions.assertFalse(result.isTimedOut());
+        Assertions.assertEquals(19, result.getIndexes().size());
+        Assertions.assertEquals(82, result.getIndexes().stream().mapToInt(Index::getLength).sum());
+    }
+
+    @Test
+    public void test_large_async_publishesImprovingSolutions() throws Exception {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+        List<List<Index>> published = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> publishingDone = new CompletableFuture<>();
+
+        // Act
+        IndexOptimizer indexOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+        OptimizationHandle handle = indexOptimizer.optimizeIndexesAsync(indexes);
+        handle.getSolutions().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<Index> item) {
+                published.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                publishingDone.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                publishingDone.complete(null);
+            }
+        });
+        OptimizationResult result = handle.getResult().get(1, TimeUnit.MINUTES);
+        publishingDone.get(1, TimeUnit.MINUTES);
+
+        // Assert
+        Assertions.assertFalse(result.isCancelled());
+        Assertions.assertEquals(19, result.getIndexes().size());
+        Assertions.assertEquals(82, result.getIndexes().stream().mapToInt(Index::getLength).sum());
+        for (int i = 1; i < published.size(); i++) {
+            Assertions.assertTrue(published.get(i).size() <= published.get(i - 1).size());
+        }
+    }
+
+    @Test
+    public void test_large_async_cancel() throws Exception {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+
+        // Act
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        OptimizationHandle handle = indexOptimizer.optimizeIndexesAsync(indexes);
+        handle.cancel();
+        OptimizationResult result = handle.getResult().get(1, TimeUnit.MINUTES);
+
+        // Assert
+        Assertions.assertTrue(result.isCancelled());
+        Assertions.assertFalse(result.isProvenOptimal());
+        Assertions.assertFalse(result.getIndexes().isEmpty());
+    }
+
+    @Test
+    public void test_independentComponents() {
+        // Arrange
+        String[] inputIndexStrings = {
+                "{{a,d,f,g,j,n,r,t,z}}",
+                "{{x,y}}",
+                "{{d,g,r}}",
+                "{{x}}",
+                "{{a,z}}",
+                "{{b,r}}",
+                "{{g}}",
+                "{{q}}"
+        };
+        List<Index> indexes = parseInputStrings(inputIndexStrings);
+        FieldDictionary dictionary = FieldDictionary.of(indexes);
+        List<EncodedIndex> encodedIndexes = dictionary.encode(indexes);
+        List<IndexComponent> components = IndexComponent.split(
+                encodedIndexes, ContainmentGraph.of(encodedIndexes).getPairs(encodedIndexes));
+
+        // Act
+        IndexOptimizer singleThreadedOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        List<Index> optimizedIndexes = singleThreadedOptimizer.optimizeIndexes(indexes);
+        IndexOptimizer multiThreadedOptimizer = IndexOptimizer.createDefaultMultiThreadedOptimizer(2);
+        List<Index> multiThreadedOptimizedIndexes = multiThreadedOptimizer.optimizeIndexes(indexes);
+        multiThreadedOptimizer.close();
+
+        // Assert
+        Assertions.assertEquals(4, components.size());
+        Assertions.assertEquals(List.of(0, 2, 4, 6), components.get(0).indexes.stream()
+                .map(encodedIndexes::indexOf)
+                .collect(Collectors.toList()));
+        Assertions.assertEquals(List.of(1, 3), components.get(1).indexes.stream()
+                .map(encodedIndexes::indexOf)
+                .collect(Collectors.toList()));
+        Assertions.assertEquals(1, components.get(1).containedContainingIndexPairs.size());
+        Assertions.assertTrue(components.get(2).containedContainingIndexPairs.isEmpty()); // {{b,r}}
+        Assertions.assertTrue(components.get(3).containedContainingIndexPairs.isEmpty()); // {{q}}
+        List<String> outputIndexStrings = optimizedIndexes.stream()
+                .map(Index::toStringSorted)
+                .collect(Collectors.toList());
+        assertThat(outputIndexStrings,
+                   containsInAnyOrder("{{g}{d,r}{a,f,j,n,t,z}}", "{{a,z}}", "{{b,r}}", "{{x}{y}}", "{{q}}"));
+        assertThat(multiThreadedOptimizedIndexes.stream().map(Index::toStringSorted).collect(Collectors.toList()),
+                   containsInAnyOrder(outputIndexStrings.toArray()));
+    }
+
+    @Test
+    public void test_large_symmetryReductionDoesNotChangeResult() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 20));
+        IndexOptimizer unreducedOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        unreducedOptimizer.reduceSymmetries = false;
+        IndexOptimizer reducedOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+
+        // Act
+        List<Index> unreducedIndexes = unreducedOptimizer.optimizeIndexes(indexes);
+        List<Index> reducedIndexes = reducedOptimizer.optimizeIndexes(indexes);
+
+        // Assert
+        Assertions.assertEquals(unreducedIndexes.size(), reducedIndexes.size());
+        Assertions.assertEquals(unreducedIndexes.stream().mapToInt(Index::getLength).sum(),
+                                reducedIndexes.stream().mapToInt(Index::getLength).sum());
+        MemoStatistics unreducedStatistics = unreducedOptimizer.getMemoStore().getStatistics();
+        MemoStatistics reducedStatistics = reducedOptimizer.getMemoStore().getStatistics();
+        Assertions.assertTrue(reducedStatistics.getHitCount() + reducedStatistics.getMissCount()
+                              < unreducedStatistics.getHitCount() + unreducedStatistics.getMissCount());
+    }
+
+    @Test
+    public void test_large_pairOrderingHeuristicsDoNotChangeResult() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 16));
+        List<PairOrderingHeuristic> heuristics = List.of(
+                PairOrderingHeuristic.FEWEST_CONTAINED_FIRST,
+                PairOrderingHeuristic.MOST_CONSTRAINED_FIRST,
+                PairOrderingHeuristic.LARGEST_REDUCTION_FIRST,
+                PairOrderingHeuristic.byKeys((containedLength, containingLength, numContaining, numContained)
+                                                     -> -containingLength));
+
+        // Act
+        List<List<Index>> optimizedIndexes = new ArrayList<>();
+        for (PairOrderingHeuristic heuristic : heuristics) {
+            IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+            indexOptimizer.setPairOrderingHeuristic(heuristic);
+            optimizedIndexes.add(indexOptimizer.optimizeIndexes(indexes));
+        }
+
+        // Assert
+        for (List<Index> optimized : optimizedIndexes) {
+            Assertions.assertEquals(optimizedIndexes.get(0).size(), optimized.size());
+            Assertions.assertEquals(optimizedIndexes.get(0).stream().mapToInt(Index::getLength).sum(),
+                                    optimized.stream().mapToInt(Index::getLength).sum());
+        }
+    }
+
+    @Test
+    public void test_setPairOrderingHeuristic_rejectsNull() {
+        // Arrange
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+
+        // Act & Assert
+        Assertions.assertThrows(IllegalArgumentException.class, () -> indexOptimizer.setPairOrderingHeuristic(null));
+        Assertions.assertSame(PairOrderingHeuristic.FEWEST_CONTAINED_FIRST, indexOptimizer.getPairOrderingHeuristic());
+    }
+
+    @Test
+    public void test_large_compareByCostDoesNotChangeResult() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+        IndexOptimizer strategyOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+        strategyOptimizer.compareByCost = false;
+        IndexOptimizer costOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+
+        // Act
+        List<Index> strategyIndexes = strategyOptimizer.optimizeIndexes(indexes);
+        List<Index> costIndexes = costOptimizer.optimizeIndexes(indexes);
+
+        // Assert: same choices, ties included
+        Assertions.assertEquals(strategyIndexes.stream().map(Index::toStringSorted).collect(Collectors.toList()),
+                                costIndexes.stream().map(Index::toStringSorted).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testCostChangeMatchesCost() {
+        // Arrange
+        IndexListSelectionStrategy strategy = new ChainingIndexListSelectionStrategy(
+                new SmallestIndexListSelectionStrategy(), new MinSumOfSquaresIndexListSelectionStrategy());
+        Index contained = Index.parseIndex("{{a,d}}");
+        Index containing = Index.parseIndex("{{a,d,g,r}}");
+        Index constrained = Index.parseIndex("{{a,d}{g,r}}");
+        Index other = Index.parseIndex("{{b}{c,e}}");
+
+        // Act
+        long[] before = strategy.cost(List.of(contained, containing, other));
+        long[] after = strategy.cost(List.of(constrained, other));
+        long[] removal = strategy.costChange(contained, null);
+        long[] replacement = strategy.costChange(containing, constrained);
+
+        // Assert
+        Assertions.assertTrue(strategy.isRankedByCost());
+        for (int i = 0; i < before.length; i++) {
+            Assertions.assertEquals(after[i] - before[i], removal[i] + replacement[i]);
+        }
+        Assertions.assertNull(new ChainingIndexListSelectionStrategy(
+                new SmallestIndexListSelectionStrategy(), new LargestIndexListSelectionStrategy())
+                                      .costChange(contained, null));
+    }
+
+    @Test
+    public void test_large_beamSearch() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(LONG_INPUT_INDEX_SET_STRINGS);
+        IndexOptimizer fastOptimizer = IndexOptimizer.createFastSingleThreadedOptimizer();
+        IndexOptimizer beamSearchOptimizer = IndexOptimizer.createBeamSearchOptimizer(8);
+
+        // Act
+        List<Index> fastIndexes = fastOptimizer.optimizeIndexes(indexes);
+        OptimizationResult beamSearchResult = beamSearchOptimizer.optimizeIndexes(indexes, null);
+
+        // Assert
+        Assertions.assertTrue(beamSearchResult.getIndexes().size() <= fastIndexes.size());
+        Assertions.assertTrue(beamSearchResult.getIndexes().stream().mapToInt(Index::getLength).sum()
+                              <= fastIndexes.stream().mapToInt(Index::getLength).sum());
+        Assertions.assertFalse(beamSearchResult.isProvenOptimal());
+        Assertions.assertEquals(0, beamSearchOptimizer.getMemoStore().getStatistics().getMissCount());
+    }
+
+    @Test
+    public void test_beamSearch_usesSelectionStrategy() {
+        // Arrange
+        List<Index> indexes = parseInputStrings(Arrays.copyOf(LONG_INPUT_INDEX_SET_STRINGS, 8));
+        IndexOptimizer beamSearchOptimizer = IndexOptimizer.createBeamSearchOptimizer(8);
+        beamSearchOptimizer.setIndexListSelectionStrategy(new LargestIndexListSelectionStrategy());
+
+        // Act
+        List<Index> optimizedIndexes = beamSearchOptimizer.optimizeIndexes(indexes);
+
+        // Assert
+        //no merge adds an index, so the largest list is the input itself
+        Assertions.assertEquals(indexes.size(), optimizedIndexes.size());
+    }
+
+    @Test
+    public void test_equalityOnly_chainCoverMatchesSearch() {
+        Random random = new Random(42);
+        for (int run = 0; run < 20; run++) {
+            // Arrange
+            List<Index> indexes = randomEqualityIndexes(random, 10, 6);
+            IndexOptimizer searchOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+            searchOptimizer.coverChains = false;
+            IndexOptimizer chainCoverOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+
+            // Act
+            List<Index> searchedIndexes = searchOptimizer.optimizeIndexes(indexes);
+            List<Index> coveredIndexes = chainCoverOptimizer.optimizeIndexes(indexes);
+
+            // Assert
+            Assertions.assertEquals(searchedIndexes.size(), coveredIndexes.size());
+            Assertions.assertEquals(searchedIndexes.stream().mapToInt(index -> index.getLength() * index.getLength()).sum(),
+                                    coveredIndexes.stream().mapToInt(index -> index.getLength() * index.getLength()).sum());
+            for (Index index : indexes) {
+                Assertions.assertTrue(coveredIndexes.stream().anyMatch(covered -> IndexOptimizer.isContained(index, covered)));
+            }
+            Assertions.assertEquals(0, chainCoverOptimizer.getMemoStore().getStatistics().getMissCount());
+        }
+    }
+
+    @Test
+    public void test_large_equalityOnly() {
+        // Arrange
+        List<Index> indexes = randomEqualityIndexes(new Random(42), 500, 16);
+        IndexOptimizer indexOptimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+
+        // Act
+        OptimizationResult result = indexOptimizer.optimizeIndexes(indexes, null);
+
+        // Assert
+        Assertions.assertTrue(result.isProvenOptimal());
+        Assertions.assertTrue(result.getIndexes().size() < indexes.size());
+        for (Index index : indexes) {
+            Assertions.assertTrue(result.getIndexes().stream().anyMatch(covered -> IndexOptimizer.isContained(index, covered)));
+        }
+    }
+
+    @Test
+    public void testContainedContainingIndexPairs_matchAllPairs() {
+        Random random = new Random(42);
+        for (int run = 0; run < 20; run++) {
+            // Arrange
+            List<Index> indexes = randomIndexes(random, 60, 8);
+            FieldDictionary dictionary = FieldDictionary.of(indexes);
+            List<EncodedIndex> encodedIndexes = dictionary.encode(indexes);
+            List<Pair<EncodedIndex, EncodedIndex>> allPairs = new ArrayList<>();
+            for (EncodedIndex containingIndex : encodedIndexes) {
+                for (EncodedIndex containedIndex : encodedIndexes) {
+                    if (containedIndex != containingIndex && IndexOptimizer.isContained(containedIndex, containingIndex)) {
+                        allPairs.add(Pair.of(containedIndex, containingIndex));
+                    }
+                }
+            }
+
+            // Act
+            List<Pair<EncodedIndex, EncodedIndex>> pairs =
+                    IndexOptimizer.calculateContainedContainingIndexPairs(encodedIndexes);
+
+            // Assert
+            Assertions.assertEquals(allPairs.size(), pairs.size());
+            for (int i = 0; i < pairs.size(); i++) {
+                Assertions.assertSame(allPairs.get(i).getLeft(), pairs.get(i).getLeft());
+                Assertions.assertSame(allPairs.get(i).getRight(), pairs.get(i).getRight());
+            }
+        }
+    }
+
+    @Test
+    public void testContainmentGraphPairs_matchCalculatedPairs() {
+        // Arrange
+        List<Index> indexes = randomIndexes(new Random(42), 200, 8);
+        FieldDictionary dictionary = FieldDictionary.of(indexes);
+        List<EncodedIndex> encodedIndexes = dictionary.encode(indexes);
+        ContainmentGraph graph = ContainmentGraph.of(encodedIndexes);
+        List<EncodedIndex> members = new ArrayList<>();
+        for (int i = 0; i < encodedIndexes.size(); i++) {
+            if (i % 10 == 0) {
+                graph.remove(encodedIndexes.get(i));
+            } else if (i % 2 == 0) {
+                members.add(encodedIndexes.get(i));
+            }
+        }
+
+        // Act
+        List<Pair<EncodedIndex, EncodedIndex>> pairs = graph.getPairs(members);
+
+        // Assert
+        List<Pair<EncodedIndex, EncodedIndex>> expectedPairs =
+                IndexOptimizer.calculateContainedContainingIndexPairs(members);
+        Assertions.assertFalse(expectedPairs.isEmpty());
+        Assertions.assertEquals(expectedPairs.size(), pairs.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            Assertions.assertSame(expectedPairs.get(i).getLeft(), pairs.get(i).getLeft());
+            Assertions.assertSame(expectedPairs.get(i).getRight(), pairs.get(i).getRight());
+        }
+    }
+
+    @Test
+    public void testContainedContainingIndexPairs_parallel() {
+        // Arrange
+        List<Index> indexes = randomIndexes(new Random(42), 500, 10);
+        FieldDictionary dictionary = FieldDictionary.of(indexes);
+        List<EncodedIndex> encodedIndexes = dictionary.encode(indexes);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        // Act
+        List<Pair<EncodedIndex, EncodedIndex>> sequentialPairs =
+                IndexOptimizer.calculateContainedContainingIndexPairs(encodedIndexes);
+        List<Pair<EncodedIndex, EncodedIndex>> parallelPairs =
+                IndexOptimizer.calculateContainedContainingIndexPairs(encodedIndexes, pool);
+        //the pair whose containing index has the most pairs, so that the graph rechecks them in parallel
+        PairGraph graph = PairGraph.of(parallelPairs);
+        int id = 0;
+        for (int i = 1; i < parallelPairs.size(); i++) {
+            if (getDegree(graph, parallelPairs.get(i).getRight()) > getDegree(graph, parallelPairs.get(id).getRight())) {
+                id = i;
+            }
+        }
+        EncodedIndex constrainedContainingIndex =
+                IndexOptimizer.mergeIndexPair(parallelPairs.get(id).getLeft(), parallelPairs.get(id).getRight());
+        List<Pair<EncodedIndex, EncodedIndex>> sequentialRemainingPairs =
+                CopyingMerge.getRemainingCcPairs(parallelPairs, id, constrainedContainingIndex);
+        int degree = getDegree(graph, parallelPairs.get(id).getRight());
+        graph.merge(id, constrainedContainingIndex, pool);
+        List<Pair<EncodedIndex, EncodedIndex>> parallelRemainingPairs = new ArrayList<>();
+        for (int remainingId : graph.filter(PairGraph.allIds(parallelPairs))) {
+            parallelRemainingPairs.add(graph.get(remainingId));
+        }
+        pool.shutdown();
+
+        // Assert
+        Assertions.assertEquals(sequentialPairs, parallelPairs);
+        Assertions.assertTrue(degree >= ParallelRange.MIN_CHUNK_SIZE);
+        Assertions.assertEquals(sequentialRemainingPairs, parallelRemainingPairs);
+    }
+
+    private static int getDegree(PairGraph graph, EncodedIndex index) {
+        return graph.getNumContained(index) + graph.getNumContaining(index);
+    }
+
+    /**
+     * Indexes with up to three field sets, and occasionally a field repeated in a later field set.
+     */
+    private static List<Index> randomIndexes(Random random, int numIndexes, int numFields) {
+        List<Index> indexes = new ArrayList<>();
+        for (int i = 0; i < numIndexes; i++) {
+            StringBuilder index = new StringBuilder("{");
+            for (int k = random.nextInt(3); k >= 0; k--) {
+                StringBuilder fields = new StringBuilder();
+                for (int f = 0; f < numFields; f++) {
+                    if (random.nextInt(4) == 0) {
+                        fields.append(fields.length() > 0 ? "," : "").append((char) ('a' + f));
+                    }
+                }
+                index.append("{").append(fields.length() > 0 ? fields : "a").append("}");
+            }
+            indexes.add(Index.parseIndex(index.append("}").toString()));
+        }
+        return indexes;
+    }
+
+    private static List<Index> randomEqualityIndexes(Random random, int numIndexes, int numFields) {
+        List<Index> indexes = new ArrayList<>();
+        for (int i = 0; i < numIndexes; i++) {
+            StringBuilder fields = new StringBuilder();
+            for (int f = 0; f < numFields; f++) {
+                if (random.nextInt(3) == 0) {
+                    fields.append(fields.length() > 0 ? "," : "").append((char) ('a' + f));
+                }
+            }
+            if (fields.length() > 0) {
+                indexes.add(Index.parseIndex("{{" + fields + "}}"));
+            }
+        }
+        return indexes;
+    }
+
+    @Test
+    public void testContainment() {
+        Assertions.assertTrue(IndexOptimizer.isContained(Index.parseIndex("{{a,c}}"), Index.parseIndex("{{a,b,c}}")));
+        Assertions.assertTrue(IndexOptimizer.isContained(Index.parseIndex("{{a}{c}}"), Index.parseIndex("{{a,b,c}}")));
+        Assertions.assertTrue(IndexOptimizer.isContained(Index.parseIndex("{{c,a}}"), Index.parseIndex("{{a}{c}{b}}")));
+        Assertions.assertFalse(IndexOptimizer.isContained(Index.parseIndex("{{a,c}}"), Index.parseIndex("{{a}{b}{c}}")));
+        Assertions.assertFalse(IndexOptimizer.isContained(Index.parseIndex("{{a,b,c}}"), Index.parseIndex("{{a,c}}")));
+        // a field repeated in a later field set
+        Assertions.assertTrue(IndexOptimizer.isContained(Index.parseIndex("{{a}}"), Index.parseIndex("{{a}{a}}")));
+        Assertions.assertFalse(IndexOptimizer.isContained(Index.parseIndex("{{a}{a}}"), Index.parseIndex("{{a}}")));
+    }
+
+    @Test
+    public void testFindLongestCommonPrefix() {
+        List<IndexFieldSet> prefix = IndexOptimizer.findLongestCommonPrefix(Index.parseIndex("{{a,b}{c,d}{e}}"),
+                                                                            Index.parseIndex("{{a}{b,c}{d,f}}"));
+        Assertions.assertEquals("{{a}{b}{c}{d}}", new Index(prefix).toStringSorted());
+    }
+
     @Disabled("The test takes longer time to run, disable for CI builds")
     @Test
     public void compareTimesWithAndWithoutMemoization() {
@@ -920,6 +1850,10 @@ class IndexOptimizerTest {
                 .collect(Collectors.toList());
     }
 
+    private static String describeSorted(List<Index> indexes) {
+        return indexes.stream().map(Index::toStringSorted).sorted().collect(Collectors.joining(","));
+    }
+
     private static void printIndexes(String setName, List<Index> indexes) {
         System.out.println(setName + ": Number of indexes: " + indexes.size());
         for (Index optimizedIndex : indexes) {
@@ -938,4 +1872,42 @@ class IndexOptimizerTest {
         return checkRes;
     }
 
+    /**
+     * Records the lists put into the store and keeps them in an unbounded store.
+     */
+    private static class RecordingMemoStore extends MemoStore {
+
+        private final List<List<EncodedIndex>> memoizedLists;
+        private final MemoStore unbounded = MemoStore.unbounded();
+
+        RecordingMemoStore(List<List<EncodedIndex>> memoizedLists) {
+            this.memoizedLists = memoizedLists;
+        }
+
+        @Override
+        void put(IndexListKey key, List<EncodedIndex> indexes, int depth, MemoScope scope) {
+            memoizedLists.add(indexes);
+            unbounded.put(key, indexes, depth, scope);
+        }
+
+        @Override
+        List<EncodedIndex> lookup(IndexListKey key, MemoScope scope) {
+            return unbounded.lookup(key, scope);
+        }
+
+        @Override
+        public void clear() {
+            unbounded.clear();
+        }
+
+        @Override
+        long entryCount() {
+            return unbounded.entryCount();
+        }
+
+        @Override
+        long weight() {
+            return unbounded.weight();
+        }
+    }
 }
@@ -2,6 +2,8 @@ package indexoptimization;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class IndexTest {
@@ -22,4 +24,25 @@ class IndexTest {
         assertEquals("{{a,d}{f}{g,j}{n,r,t,z}}", index.toString());
     }
 
+    @Test
+    public void testIndexIsImmutable() {
+        Index index = Index.parseIndex("{{d,a}{f}}");
+        assertEquals(3, index.getLength());
+        assertEquals("{{a,d}{f}}", index.toStringSorted());
+        assertSame(index.getFieldSets(), index.getFieldSets());
+        assertThrows(UnsupportedOperationException.class, () -> index.getFieldSets().clear());
+        assertThrows(UnsupportedOperationException.class, () -> index.getFields().clear());
+        assertThrows(UnsupportedOperationException.class,
+                     () -> index.getFieldSets().get(0).getFields().add(new IndexField("b")));
+    }
+
+    @Test
+    public void testEqualIndexesAreDecodedToOneInstance() {
+        List<Index> indexes = List.of(Index.parseIndex("{{a,b}{c}}"), Index.parseIndex("{{b,a}{c}}"));
+        FieldDictionary dictionary = FieldDictionary.of(indexes);
+        List<EncodedIndex> encodedIndexes = dictionary.encode(indexes);
+        assertNotSame(encodedIndexes.get(0), encodedIndexes.get(1));
+        assertSame(dictionary.decode(encodedIndexes.get(0)), dictionary.decode(encodedIndexes.get(1)));
+    }
+
 }
@@ -0,0 +1,33 @@
+package indexoptimization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps all the sets with the smallest number of indexes and chooses the last of them, so the result depends on the
+ * order in which the optimizer offers the candidates. It does not rank by cost, so the optimizer keeps all the ties.
+ */
+public class LastOfSmallestIndexListSelectionStrategy implements IndexListSelectionStrategy {
+    @Override
+    public List<List<Index>> choseBestIndexSets(List<List<Index>> indexCandidates) {
+        //chose all the sets with the smallest number of indexes
+        int minSize = -1;
+        List<List<Index>> bestIndexSetList = new ArrayList<>();
+        for (List<Index> indexes : indexCandidates) {
+            if (minSize == -1 || indexes.size() < minSize) {
+                bestIndexSetList.clear();
+                minSize = indexes.size();
+            }
+            if (indexes.size() == minSize) {
+                bestIndexSetList.add(indexes);
+            }
+        }
+        return bestIndexSetList;
+    }
+
+    @Override
+    public List<Index> choseBestIndexSet(List<List<Index>> indexColCandidates) {
+        List<List<Index>> bestIndexSets = choseBestIndexSets(indexColCandidates);
+        return bestIndexSets.isEmpty() ? null : bestIndexSets.get(bestIndexSets.size() - 1);
+    }
+}
@@ -0,0 +1,195 @@
+package indexoptimization;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoStoreTest {
+
+    private final FieldDictionary dictionary = new FieldDictionary();
+    private final MemoScope scope = new MemoScope(dictionary, new SmallestIndexListSelectionStrategy(), -1);
+
+    @Test
+    public void testUnboundedStoreCountsHitsAndMisses() {
+        MemoStore store = MemoStore.unbounded();
+        IndexListKey key = key("{{a}}", "{{b}}");
+        assertNull(store.get(key, scope));
+        store.put(key, indexes("{{a}}"), 0, scope);
+        assertNotNull(store.get(key("{{b}}", "{{a}}"), scope));
+
+        MemoStatistics statistics = store.getStatistics();
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(1, statistics.getEntryCount());
+        assertTrue(statistics.getWeight() > 0);
+    }
+
+    @Test
+    public void testEntriesAreOnlyReusedInCompatibleScopes() {
+        MemoStore store = MemoStore.unbounded();
+        IndexListSelectionStrategy unnamedStrategy = new LargestIndexListSelectionStrategy();
+        store.put(key("{{a}}", "{{a,b}}"), indexes("{{a}{b}}"), 0, scope);
+        store.put(key("{{c}}", "{{c,d}}"), indexes("{{c}{d}}"), 0, new MemoScope(dictionary, unnamedStrategy, -1));
+
+        //a limited search chooses differently
+        MemoScope limitedScope = new MemoScope(dictionary, new SmallestIndexListSelectionStrategy(), 1);
+        assertNull(store.get(key("{{a}}", "{{a,b}}"), limitedScope));
+        //another strategy object with the same fingerprint chooses the same
+        MemoScope sameScope = new MemoScope(dictionary, new SmallestIndexListSelectionStrategy(), -1);
+        assertNotNull(store.get(key("{{a}}", "{{a,b}}"), sameScope));
+        //a strategy without a fingerprint is only known by its identity
+        MemoScope otherScope = new MemoScope(dictionary, new LargestIndexListSelectionStrategy(), -1);
+        assertNull(store.get(key("{{c}}", "{{c,d}}"), otherScope));
+        assertNotNull(store.get(key("{{c}}", "{{c,d}}"), new MemoScope(dictionary, unnamedStrategy, -1)));
+    }
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() {
+        MemoStore store = MemoStore.bounded(2, -1, EvictionPolicy.LRU);
+        store.put(key("{{a}}"), indexes("{{a}}"), 0, scope);
+        store.put(key("{{b}}"), indexes("{{b}}"), 0, scope);
+        store.get(key("{{a}}"), scope);
+        store.put(key("{{c}}"), indexes("{{c}}"), 0, scope);
+
+        assertNotNull(store.get(key("{{a}}"), scope));
+        assertNull(store.get(key("{{b}}"), scope));
+        assertNotNull(store.get(key("{{c}}"), scope));
+        assertEquals(1, store.getStatistics().getEvictionCount());
+    }
+
+    @Test
+    public void testShallowFirstEvictsDeepestSubproblems() {
+        MemoStore store = MemoStore.bounded(2, -1, EvictionPolicy.SHALLOW_FIRST);
+        store.put(key("{{a}}"), indexes("{{a}}"), 0, scope);
+        store.put(key("{{b}}"), indexes("{{b}}"), 3, scope);
+        store.put(key("{{c}}"), indexes("{{c}}"), 1, scope);
+
+        assertNotNull(store.get(key("{{a}}"), scope));
+        assertNull(store.get(key("{{b}}"), scope));
+        assertNotNull(store.get(key("{{c}}"), scope));
+    }
+
+    @Test
+    public void testTinyLfuKeepsFrequentlyRequestedEntries() {
+        MemoStore store = MemoStore.bounded(3, -1, EvictionPolicy.TINY_LFU);
+        store.put(key("{{a}}"), indexes("{{a}}"), 0, scope);
+        for (int i = 0; i < 5; i++) {
+            store.get(key("{{a}}"), scope);
+        }
+        for (String field : List.of("b", "c", "d", "e", "f", "g")) {
+            store.put(key("{{" + field + "}}"), indexes("{{" + field + "}}"), 0, scope);
+        }
+
+        assertNotNull(store.get(key("{{a}}"), scope));
+        assertEquals(3, store.getStatistics().getEntryCount());
+    }
+
+    @Test
+    public void testWeightBudgetIsRespected() {
+        MemoStore store = MemoStore.bounded(-1, 2000, EvictionPolicy.LRU);
+        for (int i = 0; i < 100; i++) {
+            store.put(key("{{f" + i + "}}"), indexes("{{f" + i + "}}"), 0, scope);
+        }
+        MemoStatistics statistics = store.getStatistics();
+        assertTrue(statistics.getWeight() <= 2000);
+        assertTrue(statistics.getEvictionCount() > 0);
+        assertEquals(100, statistics.getEntryCount() + statistics.getEvictionCount());
+    }
+
+    @Test
+    public void testPersistentStoreIsReusedWithDifferentFieldIds(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("memo.bin");
+        try (MemoStore store = MemoStore.persistent(file)) {
+            store.put(key("{{a,b}}", "{{b}{c}}"), indexes("{{b}{a,c}}"), 1, scope);
+        }
+
+        // another run, in which the fields get different ids
+        FieldDictionary otherDictionary = new FieldDictionary();
+        otherDictionary.intern("c");
+        otherDictionary.intern("x");
+        List<EncodedIndex> otherIndexes = otherDictionary.encode(List.of(Index.parseIndex("{{b}{c}}"),
+                                                                         Index.parseIndex("{{b,a}}")));
+        try (MemoStore store = MemoStore.persistent(file)) {
+            MemoScope otherScope = new MemoScope(otherDictionary, new SmallestIndexListSelectionStrategy(), -1);
+            List<EncodedIndex> indexes = store.get(IndexListKey.of(otherIndexes), otherScope);
+            assertNotNull(indexes);
+            assertEquals(1, indexes.size());
+            assertEquals("{{b}{c,a}}", indexes.get(0).toIndex(otherDictionary).toString());
+            assertNull(store.get(IndexListKey.of(otherIndexes.subList(0, 1)), otherScope));
+        }
+    }
+
+    @Test
+    public void testPersistentStoreIgnoresIncompleteRecords(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("memo.bin");
+        try (MemoStore store = MemoStore.persistent(file)) {
+            store.put(key("{{a}}", "{{a,b}}"), indexes("{{a}{b}}"), 0, scope);
+            store.put(key("{{c}}", "{{c,d}}"), indexes("{{c}{d}}"), 0, scope);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (MemoStore store = MemoStore.persistent(file)) {
+            assertNotNull(store.get(key("{{a}}", "{{a,b}}"), scope));
+            assertNull(store.get(key("{{c}}", "{{c,d}}"), scope));
+            store.put(key("{{c}}", "{{c,d}}"), indexes("{{c}{d}}"), 0, scope);
+        }
+        try (MemoStore store = MemoStore.persistent(file)) {
+            assertEquals(2, ((PersistentMemoStore) store).persistedEntryCount());
+            assertNotNull(store.get(key("{{c}}", "{{c,d}}"), scope));
+        }
+    }
+
+    @Test
+    public void testPersistentStoreOnlyKeepsEntriesOfOneConfiguration(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("memo.bin");
+        MemoScope limitedScope = new MemoScope(dictionary, new SmallestIndexListSelectionStrategy(), 1);
+        try (MemoStore store = MemoStore.persistent(file)) {
+            store.put(key("{{a}}", "{{a,b}}"), indexes("{{a}{b}}"), 0, limitedScope);
+            store.put(key("{{c}}", "{{c,d}}"), indexes("{{c}{d}}"), 0, scope);
+            assertEquals(1, ((PersistentMemoStore) store).persistedEntryCount());
+        }
+
+        try (MemoStore store = MemoStore.persistent(file)) {
+            assertNull(store.get(key("{{a}}", "{{a,b}}"), scope));
+            assertNotNull(store.get(key("{{a}}", "{{a,b}}"), limitedScope));
+            assertNull(store.get(key("{{c}}", "{{c,d}}"), scope));
+            store.clear();
+            store.put(key("{{c}}", "{{c,d}}"), indexes("{{c}{d}}"), 0, scope);
+        }
+        try (MemoStore store = MemoStore.persistent(file)) {
+            assertNotNull(store.get(key("{{c}}", "{{c,d}}"), scope));
+            assertNull(store.get(key("{{a}}", "{{a,b}}"), limitedScope));
+        }
+    }
+
+    @Test
+    public void testPersistentStoreLocksItsFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("memo.bin");
+        MemoStore store = MemoStore.persistent(file);
+        assertThrows(IOException.class, () -> MemoStore.persistent(file));
+        store.close();
+        MemoStore.persistent(file).close();
+    }
+
+    private IndexListKey key(String... indexStrings) {
+        return IndexListKey.of(indexes(indexStrings));
+    }
+
+    private List<EncodedIndex> indexes(String... indexStrings) {
+        return dictionary.encode(Arrays.stream(indexStrings)
+                                         .map(Index::parseIndex)
+                                         .collect(Collectors.toList()));
+    }
+
+}
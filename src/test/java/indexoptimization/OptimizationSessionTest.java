@@ -0,0 +1,74 @@
+package indexoptimization;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimizationSessionTest {
+
+    private static final List<Index> INDEXES = indexes(
+            "{{a,d,f,g,j,n,r,t,z}}",
+            "{{d,g,r}}",
+            "{{a,z}}",
+            "{{b,r}}",
+            "{{g}}",
+            "{{x,y}}",
+            "{{x}}");
+
+    @Test
+    public void testOpenSessionOptimizesLikeTheOptimizer() {
+        IndexOptimizer optimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        List<Index> expected = IndexOptimizer.createDefaultSingleThreadedOptimizer().optimizeIndexes(INDEXES);
+
+        OptimizationSession session = optimizer.openSession(INDEXES);
+
+        assertThat(strings(session.getOptimizedIndexes()), containsInAnyOrder(strings(expected).toArray()));
+        assertEquals(2, session.lastNumSearchedComponents);
+    }
+
+    @Test
+    public void testUpdateSearchesOnlyTheChangedComponents() {
+        IndexOptimizer optimizer = IndexOptimizer.createDefaultSingleThreadedOptimizer();
+        OptimizationSession session = optimizer.openSession(INDEXES);
+
+        List<Index> optimizedIndexes = session.update(indexes("{{y}}", "{{c}}"), indexes("{{b,r}}"));
+
+        assertEquals(1, session.lastNumSearchedComponents);
+        assertThat(strings(optimizedIndexes),
+                   containsInAnyOrder("{{g}{d,r}{a,f,j,n,t,z}}", "{{a,z}}", "{{x}{y}}", "{{y}}", "{{c}}"));
+        List<Index> expected = IndexOptimizer.createDefaultSingleThreadedOptimizer()
+                .optimizeIndexes(session.getIndexes());
+        assertThat(strings(optimizedIndexes), containsInAnyOrder(strings(expected).toArray()));
+    }
+
+    @Test
+    public void testUpdateWithoutChangesDoesNotSearch() {
+        OptimizationSession session = IndexOptimizer.createDefaultSingleThreadedOptimizer().openSession(INDEXES);
+
+        session.update(List.of(), List.of());
+
+        assertEquals(0, session.lastNumSearchedComponents);
+    }
+
+    @Test
+    public void testRemovingUnknownIndexFails() {
+        OptimizationSession session = IndexOptimizer.createDefaultSingleThreadedOptimizer().openSession(INDEXES);
+
+        assertThrows(IllegalArgumentException.class, () -> session.update(List.of(), indexes("{{q}}")));
+    }
+
+    private static List<Index> indexes(String... indexes) {
+        return Arrays.stream(indexes).map(Index::parseIndex).collect(Collectors.toList());
+    }
+
+    private static List<String> strings(List<Index> indexes) {
+        return indexes.stream().map(Index::toStringSorted).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,81 @@
+package indexoptimization;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PairGraphTest {
+
+    private static final List<Index> INDEXES = Stream.of(
+            "{{a,d,f,g,j,n,r,t,z}}",
+            "{{d,g,r}}",
+            "{{a,z}}",
+            "{{b,r}}",
+            "{{g}}",
+            "{{a}{z}}",
+            "{{d,g}{r,t}}"
+    ).map(Index::parseIndex).collect(Collectors.toList());
+
+    @Test
+    public void testMergeMatchesRemainingPairs() {
+        List<Pair<EncodedIndex, EncodedIndex>> pairs = calculatePairs();
+        for (int i = 0; i < pairs.size(); i++) {
+            PairGraph graph = PairGraph.of(pairs);
+            EncodedIndex constrained = IndexOptimizer.mergeIndexPair(pairs.get(i).getLeft(), pairs.get(i).getRight());
+            List<Pair<EncodedIndex, EncodedIndex>> remainingPairs =
+                    CopyingMerge.getRemainingCcPairs(pairs, i, constrained);
+
+            graph.merge(i, constrained, null);
+
+            assertEquals(remainingPairs, getPairs(graph, graph.filter(PairGraph.allIds(pairs))));
+            assertEquals(remainingPairs.stream().anyMatch(pair -> pair.getLeft() == constrained),
+                         graph.isContainedIndex(constrained));
+            for (Pair<EncodedIndex, EncodedIndex> pair : remainingPairs) {
+                assertEquals(remainingPairs.stream().filter(p -> p.getRight().equals(pair.getRight())).count(),
+                             graph.getNumContained(pair.getRight()));
+                assertEquals(remainingPairs.stream().filter(p -> p.getLeft().equals(pair.getLeft())).count(),
+                             graph.getNumContaining(pair.getLeft()));
+            }
+        }
+    }
+
+    @Test
+    public void testUndoRestoresPairs() {
+        List<Pair<EncodedIndex, EncodedIndex>> pairs = calculatePairs();
+        PairGraph graph = PairGraph.of(pairs);
+        int[] ids = PairGraph.allIds(pairs);
+
+        int mark = graph.merge(0, IndexOptimizer.mergeIndexPair(pairs.get(0).getLeft(), pairs.get(0).getRight()), null);
+        int[] remainingIds = graph.filter(ids);
+        graph.merge(remainingIds[0], IndexOptimizer.mergeIndexPair(graph.get(remainingIds[0]).getLeft(),
+                                                                   graph.get(remainingIds[0]).getRight()), null);
+        graph.undo(mark);
+
+        List<Pair<EncodedIndex, EncodedIndex>> restoredPairs = getPairs(graph, graph.filter(ids));
+        assertEquals(pairs.size(), restoredPairs.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            assertSame(pairs.get(i), restoredPairs.get(i));
+        }
+        assertTrue(graph.isContainedIndex(pairs.get(0).getLeft()));
+    }
+
+    private static List<Pair<EncodedIndex, EncodedIndex>> calculatePairs() {
+        FieldDictionary dictionary = FieldDictionary.of(INDEXES);
+        return IndexOptimizer.calculateContainedContainingIndexPairs(dictionary.encode(INDEXES));
+    }
+
+    private static List<Pair<EncodedIndex, EncodedIndex>> getPairs(PairGraph graph, int[] ids) {
+        List<Pair<EncodedIndex, EncodedIndex>> pairs = new ArrayList<>();
+        for (int id : ids) {
+            pairs.add(graph.get(id));
+        }
+        return pairs;
+    }
+
+}
@@ -0,0 +1,85 @@
+package indexoptimization;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class QueryWorkloadTest {
+
+    @Test
+    public void testShapeNormalizationAndEsrIndex() {
+        // Act
+        QueryShape shape = QueryShape.of(List.of("e2", "e1"), List.of("e1", "s1", "s2"), List.of("s1", "r2", "r1"), 7);
+
+        // Assert
+        Assertions.assertEquals(List.of("e1", "e2"), shape.getEqualityFields());
+        Assertions.assertEquals(List.of("s1", "s2"), shape.getSortFields());
+        Assertions.assertEquals(List.of("r1", "r2"), shape.getRangeFields());
+        Assertions.assertEquals("{{e1,e2}{s1}{s2}{r1,r2}}", shape.toIndex().toString());
+    }
+
+    @Test
+    public void testReadDeduplicatesShapes(@TempDir Path dir) throws IOException {
+        // Arrange
+        Path file = dir.resolve("shapes.txt");
+        Files.write(file, List.of(
+                "# slow queries",
+                "eq=a,b sort=c range=d count=10",
+                "",
+                "eq=b,a sort=c range=d count=5",
+                "eq=a count=3"));
+
+        // Act
+        QueryWorkload workload = QueryWorkload.read(file);
+
+        // Assert
+        Assertions.assertEquals(2, workload.getShapes().size());
+        Assertions.assertEquals(15, workload.getShapes().get(0).getFrequency());
+        Assertions.assertEquals(List.of("{{a,b}{c}{d}}", "{{a}}"),
+                                workload.toIndexes().stream().map(Index::toString).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testReadReportsLine(@TempDir Path dir) throws IOException {
+        // Arrange
+        Path file = dir.resolve("shapes.txt");
+        Files.write(file, List.of("eq=a count=3", "eq=a filter=b"));
+
+        // Act & Assert
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                                                             () -> QueryWorkload.read(file));
+        Assertions.assertTrue(e.getMessage().endsWith("shapes.txt:2: Unknown key: filter"));
+    }
+
+    @Test
+    public void testOptimizeReportsServedShapes() {
+        // Arrange
+        QueryWorkload workload = QueryWorkload.of(List.of(
+                QueryWorkload.parseShape("eq=a,b sort=c range=d count=10"),
+                QueryWorkload.parseShape("eq=a count=3"),
+                QueryWorkload.parseShape("eq=a,b sort=c count=2"),
+                QueryWorkload.parseShape("eq=x range=y,a count=1")));
+
+        // Act
+        List<WorkloadIndex> optimizedIndexes = workload.optimize(IndexOptimizer.createDefaultSingleThreadedOptimizer());
+
+        // Assert
+        Assertions.assertEquals(2, optimizedIndexes.size());
+        WorkloadIndex merged = optimizedIndexes.stream()
+                .filter(index -> index.getIndex().getLength() == 4)
+                .findFirst()
+                .orElseThrow();
+        Assertions.assertEquals("{{a}{b}{c}{d}}", merged.getIndex().toStringSorted());
+        Assertions.assertEquals(workload.getShapes().subList(0, 3), merged.getServedShapes());
+        Assertions.assertEquals(15, merged.getServedFrequency());
+        WorkloadIndex other = optimizedIndexes.get(1 - optimizedIndexes.indexOf(merged));
+        Assertions.assertEquals(List.of(workload.getShapes().get(3)), other.getServedShapes());
+    }
+
+}